@@ -14,7 +14,8 @@ import view.View;
  * applies logic to make changes to the model.
  * This is abstract and supposed to remain unchanged.
  * For changes, edit the MouseHandler, but be sure
- * to call the super methods.
+ * to call the super methods. Button state is written under
+ * the model lock, since the game loop reads it while ticking.
  * @author Nick Cheng
  */
 public abstract class AbstractMouseHandler implements MouseListener {
@@ -51,21 +52,25 @@ public abstract class AbstractMouseHandler implements MouseListener {
 
     @Override
     public void mousePressed(MouseEvent m) {
-        if (m.getButton() == MouseEvent.BUTTON1){
-            leftButton = true;
-        }
-        if (m.getButton() == MouseEvent.BUTTON3){
-            rightButton = true;
+        synchronized(model){
+            if (m.getButton() == MouseEvent.BUTTON1){
+                leftButton = true;
+            }
+            if (m.getButton() == MouseEvent.BUTTON3){
+                rightButton = true;
+            }
         }
     }
 
     @Override
     public void mouseReleased(MouseEvent m) {
-        if (m.getButton() == MouseEvent.BUTTON1){
-            leftButton = false;
-        }
-        if (m.getButton() == MouseEvent.BUTTON3){
-            rightButton = false;
+        synchronized(model){
+            if (m.getButton() == MouseEvent.BUTTON1){
+                leftButton = false;
+            }
+            if (m.getButton() == MouseEvent.BUTTON3){
+                rightButton = false;
+            }
         }
     }
     
@@ -33,6 +33,10 @@ public class Controller {
      *  and contains the main game loop */
     public FrameHandler gameFrames;
     
+    /** the game loop thread runs the frame 
+     *  handler at a fixed tick rate */
+    public GameLoop gameLoop;
+    
     /** the key handler listens for key strokes 
      *  and holds a list of currently pressed keys */
     public KeyHandler gameKeys;
@@ -51,17 +55,27 @@ public class Controller {
         
         //initialize game loop
         gameFrames =  new FrameHandler(this, model);
-        new javax.swing.Timer(Constants.TIME_STEP, gameFrames).start();
+        gameLoop = new GameLoop(this, gameFrames);
         
         if(Constants.DEBUG) System.out.println("controller init, ready.");
         notifyView();
+        gameLoop.start();
     }
 
     /**
      * This function makes graphical updates to the GUI
      */
     public void notifyView(){
-        view.updateGraphics();
+        notifyView(1.0);
+    }
+    
+    /**
+     * This function makes graphical updates to the GUI
+     * @param alpha How far the game loop is between the last
+     *      tick and the next, for interpolating positions
+     */
+    public void notifyView(double alpha){
+        view.updateGraphics(alpha);
     }
     
     public static void main(String[] args) {
@@ -5,13 +5,16 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 import model.Constants;
+import model.HitShape;
 import model.animation.IteratingAnimation.Direction;
 import model.Model;
 import model.MovieClip;
 
 /**
  * This is the frame handler. It contains the main game loop which
- * runs at a fixed rate determined in Constants.
+ * runs at a fixed rate determined in Constants. The GameLoop thread
+ * calls tick; it can also be driven by a javax.swing.Timer, which
+ * calls actionPerformed.
  * @author Nick Cheng
  */
 public class FrameHandler implements ActionListener{
@@ -33,10 +36,20 @@ public class FrameHandler implements ActionListener{
     }
     
     public void actionPerformed(ActionEvent e) {
+       tick();
+       controller.notifyView();
+    }
+    
+    /**
+     * Runs one time-step of the game, without updating the view
+     */
+    public void tick(){
        synchronized(model){
+           model.savePositions();
+           model.spatialHash.update();
            keys.updateKeyPresses();
            enterFrame();
-           controller.notifyView();
+           model.advanceAnimations();
            //if (lastTime != 0) System.out.println(System.currentTimeMillis()-lastTime);
            //lastTime = System.currentTimeMillis();
        }
@@ -47,11 +60,11 @@ public class FrameHandler implements ActionListener{
     ///////////////////////////////////
     
     /**
-     * The main game loop which runs every TIME_STEP milliseconds
+     * The main game loop which runs TICK_RATE times a second
      */
     private void enterFrame(){
         
-        if (model.player.hitTest(model.spinner,"circle")){
+        if (model.player.hitTest(model.spinner, HitShape.CIRCLE)){
             model.player.swapAndResume("hurt");
         }else{
             model.player.swapAndResume("walk");
@@ -100,7 +113,7 @@ public class FrameHandler implements ActionListener{
         }
         
         //collision detect
-        if(model.player.hitTest(model.spinner,"circle")){
+        if(model.player.hitTest(model.spinner, HitShape.CIRCLE)){
             model.player.swapAndResume("hurt");
         }
         
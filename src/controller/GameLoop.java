@@ -0,0 +1,187 @@
+package controller;
+
+import java.util.concurrent.locks.LockSupport;
+
+import model.Constants;
+
+/**
+ * This is the game loop thread. It runs the frame handler at a fixed
+ * number of ticks per second, no matter how long painting takes, and
+ * asks the view to update after the ticks.
+ * 
+ * Real time is added up in an accumulator and spent in whole ticks. If
+ * the game falls behind (a slow tick, or the machine was busy) it runs
+ * extra ticks to catch up, but never more than MAX_CATCH_UP_TICKS in a
+ * row. Past that the rest of the lost time is dropped, so a game that
+ * cannot keep up slows down instead of falling further and further behind.
+ * 
+ * The time left over in the accumulator, as a fraction of a tick, is the
+ * interpolation alpha. The view can use it to draw movie clips between
+ * their positions at the last two ticks (see Constants.INTERPOLATE).
+ * @author Nick Cheng
+ */
+public class GameLoop implements Runnable {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    /** sleep until this close to the next tick, then yield */
+    private static final long SPIN_NANOS = 1000000L;
+
+    private Controller controller;
+    private FrameHandler frames;
+    
+    private volatile long tickNanos;
+    private volatile int maxCatchUp;
+    /** views per second between ticks, 0 to only update the view after ticks */
+    private volatile int renderRate;
+    
+    private volatile boolean running;
+    private Thread thread;
+    
+    private volatile double alpha;
+    private volatile long tickCount;
+    private volatile long droppedTicks;
+    
+    /**
+     * Creates a loop that runs at Constants.TICK_RATE
+     * @param controller The controller, whose view gets updated
+     * @param frames The frame handler to tick
+     */
+    public GameLoop(Controller controller, FrameHandler frames) {
+        this(controller, frames, Constants.TICK_RATE);
+    }
+    
+    /**
+     * Creates a loop that runs at a given rate
+     * @param controller The controller, whose view gets updated
+     * @param frames The frame handler to tick
+     * @param tickRate Ticks per second
+     */
+    public GameLoop(Controller controller, FrameHandler frames, int tickRate) {
+        this.controller = controller;
+        this.frames = frames;
+        setTickRate(tickRate);
+        maxCatchUp = Constants.MAX_CATCH_UP_TICKS;
+    }
+    
+    /**
+     * Starts the loop on its own thread
+     */
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this, "Game Loop");
+        thread.start();
+        if(Constants.DEBUG) System.out.println("game loop running at "+getTickRate()+" ticks per second.");
+    }
+    
+    /**
+     * Stops the loop after the tick it is on
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) thread.interrupt();
+        thread = null;
+    }
+    
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        long accumulator = 0;
+        long nextRender = previous;
+        
+        while (running) {
+            long now = System.nanoTime();
+            accumulator += now - previous;
+            previous = now;
+            long step = tickNanos;
+            
+            int ticks = 0;
+            while (accumulator >= step && ticks < maxCatchUp) {
+                try {
+                    frames.tick();
+                } catch (RuntimeException e) {
+                    //same as an exception on the event thread: report it and carry on
+                    e.printStackTrace();
+                }
+                accumulator -= step;
+                ticks++;
+            }
+            tickCount += ticks;
+            if (accumulator >= step) {
+                //too far behind, give up on the lost time
+                droppedTicks += accumulator / step;
+                accumulator %= step;
+            }
+            
+            int rate = renderRate;
+            if (ticks > 0 || (rate > 0 && now - nextRender >= 0)) {
+                alpha = (double) accumulator / step;
+                controller.notifyView(alpha);
+                if (rate > 0) nextRender = now + NANOS_PER_SECOND / rate;
+            }
+            
+            //wait for the next tick, or the next view update between ticks
+            long wake = now + (step - accumulator);
+            if (rate > 0 && nextRender - wake < 0) wake = nextRender;
+            long wait = wake - System.nanoTime();
+            if (wait > SPIN_NANOS) {
+                LockSupport.parkNanos(wait - SPIN_NANOS);
+            } else if (wait > 0) {
+                Thread.yield();
+            }
+        }
+    }
+    
+    /**
+     * @param ticksPerSecond The number of times a second to run the frame handler
+     */
+    public void setTickRate(int ticksPerSecond) {
+        if (ticksPerSecond <= 0) {
+            throw new IllegalArgumentException("tick rate must be positive");
+        }
+        tickNanos = NANOS_PER_SECOND / ticksPerSecond;
+    }
+    
+    public int getTickRate() {
+        return (int) Math.round((double) NANOS_PER_SECOND / tickNanos);
+    }
+    
+    /**
+     * @param ticks The most ticks to run in a row while catching up
+     */
+    public void setMaxCatchUpTicks(int ticks) {
+        maxCatchUp = Math.max(ticks, 1);
+    }
+    
+    /**
+     * Lets the view update between ticks, which only makes a difference
+     * with interpolation turned on.
+     * @param framesPerSecond View updates per second, or 0 to only update
+     *      the view once after each batch of ticks
+     */
+    public void setRenderRate(int framesPerSecond) {
+        renderRate = Math.max(framesPerSecond, 0);
+    }
+    
+    /**
+     * How far the loop is between the last tick and the next, from 0
+     * up to (but not including) 1
+     * @return The interpolation alpha
+     */
+    public double getAlpha() {
+        return alpha;
+    }
+    
+    /** @return Number of ticks run so far */
+    public long getTickCount() {
+        return tickCount;
+    }
+    
+    /** @return Number of ticks skipped because the game could not keep up */
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+    
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -6,6 +6,7 @@ import java.awt.geom.Point2D;
 
 import controller.advancedtools.Derivative;
 import model.Constants;
+import model.Model;
 
 /**
  * This is the key listener that gets added to the content pane of the
@@ -13,11 +14,14 @@ import model.Constants;
  * at any given moment. And they can be retrieved with the isDown function.
  * Also in this class are functions to get directional vectors based on
  * ASWD or arrow key movement. Users should not use the keyPressed function
- * but instead access isDown during the time step
+ * but instead access isDown during the time step. Key events arrive on
+ * the event thread, so the key state is written under the model lock
+ * that the game loop holds while it ticks.
  * @author Nick Cheng
  */
 public class KeyHandler implements KeyListener {
     Controller controller;
+    Model model;
     
     private boolean[] keysDown; 
     private Derivative[] keyDerivs;
@@ -26,6 +30,7 @@ public class KeyHandler implements KeyListener {
     public KeyHandler(Controller controller){
         if(Constants.DEBUG) System.out.println("key handler init, ready.");
         this.controller = controller;
+        this.model = controller.model;
         keysDown = new boolean[128];
         keyDerivs = new Derivative[128];
         keyDerivResults = new int[128];
@@ -39,13 +44,17 @@ public class KeyHandler implements KeyListener {
     public void keyPressed(KeyEvent k) {
         //System.out.println(k.getKeyCode());
         if(k.getKeyCode()>=128) return;
-        keysDown[k.getKeyCode()] = true;
+        synchronized(model){
+            keysDown[k.getKeyCode()] = true;
+        }
     }
 
     @Override
     public void keyReleased(KeyEvent k) {
         if(k.getKeyCode()>=128) return;
-        keysDown[k.getKeyCode()] = false;
+        synchronized(model){
+            keysDown[k.getKeyCode()] = false;
+        }
     }
 
     @Override
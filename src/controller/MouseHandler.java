@@ -2,6 +2,7 @@ package controller;
 
 import java.awt.event.MouseEvent;
 
+import model.HitShape;
 import model.Model;
 import model.MovieClip;
 
@@ -33,13 +34,13 @@ public class MouseHandler extends AbstractMouseHandler {
         synchronized(model){
             super.mousePressed(m);
             
-            MovieClip dot = new MovieClip("images/bullethole");
+            MovieClip dot = model.pool.obtain("images/bullethole");
             dot.stopAtEnd();
             dot.x = m.getX();
             dot.y = m.getY();
             dot.setOrigin(12, 12);
             
-            if(dot.hitTest(controller.model.player,"circle")){
+            if(dot.hitTest(controller.model.player, HitShape.CIRCLE)){
                 model.hits.add(dot);
                 model.addChild(dot,1);
             }else{
@@ -6,20 +6,109 @@ public class Constants {
     public static final int GAME_HEIGHT = 480;
     
     /**
-     * Number of milliseconds between each time-step
-     * Try to keep it a multiple of 1/60th of a second
-     * to match screen refresh rate.
+     * Number of time-steps (ticks) per second that the game loop
+     * runs at. It can be changed while running with GameLoop.setTickRate.
+     * Try to keep it a divisor of 60 to match screen refresh rate.
      * 
-     * Use 33 for 30fps
-     * Use 16 for 60fps
+     * Use 30 for 30fps
+     * Use 60 for 60fps
      */
-    public static final int TIME_STEP = 16;
+    public static final int TICK_RATE = 60;
     
     /**
-     * Number of layers to contain movie clips.
+     * Number of milliseconds between each time-step, rounded down.
+     * The game loop is timed from TICK_RATE.
+     */
+    public static final int TIME_STEP = 1000 / TICK_RATE;
+    
+    /**
+     * The most ticks the game loop will run in a row to catch up
+     * after falling behind. Any more lost time is skipped.
+     */
+    public static final int MAX_CATCH_UP_TICKS = 5;
+    
+    /**
+     * Draw movie clips between their positions at the last two ticks,
+     * according to how far the game loop is to the next tick. Smoother
+     * when painting more often than ticking, but everything is drawn up
+     * to one tick late.
+     */
+    public static final boolean INTERPOLATE = false;
+    
+    /**
+     * Draw each frame from the game loop into a BufferStrategy (GameCanvas)
+     * instead of asking Swing to repaint a JPanel (GameArea).
+     */
+    public static final boolean ACTIVE_RENDERING = true;
+    
+    /**
+     * Only draw the parts of the screen that changed since the last
+     * frame. Turn off to draw every frame from scratch.
+     */
+    public static final boolean DIRTY_RECTANGLES = true;
+    
+    /**
+     * Width and height of the sheets that animation frames are packed
+     * onto (see TextureAtlas). Frames bigger than this get an image of
+     * their own.
+     */
+    public static final int ATLAS_SIZE = 1024;
+    
+    /**
+     * Draw rotated and scaled clips from pre-rendered copies (see
+     * RotationCache) instead of transforming them every frame.
+     * Rotations are rounded to one of ROTATION_STEPS angles.
+     */
+    public static final boolean ROTATION_CACHE = true;
+    public static final int ROTATION_STEPS = 64;
+    /** Most memory the pre-rendered copies may use, in bytes */
+    public static final long ROTATION_CACHE_BYTES = 16 * 1024 * 1024;
+    
+    /**
+     * Load animations in the background (see AssetLoader). A movie clip
+     * whose animation is still loading shows an empty frame until it is
+     * ready. Turn off to have new movie clips wait for their images.
+     */
+    public static final boolean ASYNC_LOADING = true;
+    /**
+     * Sprite pack to read animations from, if the file exists. Make
+     * it with SpritePack's main method. Animations missing from it
+     * are read from their folders.
+     */
+    public static final String SPRITE_PACK = "images.pack";
+    /** Number of threads decoding images */
+    public static final int LOADER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    
+    /**
+     * Memory the loaded animation frames should take, in bytes (4 a pixel).
+     * Past this, animations that no movie clip uses are dropped.
+     */
+    public static final long ANIMATION_CACHE_BYTES = 64 * 1024 * 1024;
+    
+    /**
+     * Width and height in pixels of the cells of the model's spatial
+     * hash, which finds the movie clips near a place
+     */
+    public static final int SPATIAL_CELL_SIZE = 64;
+    
+    /**
+     * Pixels at least this opaque (0-255) count as solid for
+     * pixel perfect hit tests (HitShape.PIXEL)
+     */
+    public static final int HIT_ALPHA = 128;
+    
+    /**
+     * Most removed movie clips the model's pool keeps for each
+     * animation path, to hand out again (see MovieClipPool)
+     */
+    public static final int POOL_MAX_IDLE = 256;
+    
+    /**
+     * Number of layers to contain movie clips when the game starts.
      * Layers will be numbered 0 to DISPLAY_LAYERS (inclusive)
      * Each layer can hold as many movie clips as it needs to.
-     * see displayList in model for more details
+     * see displayList in model for more details, and setLayerCount
+     * there to change it while the game runs
      */
     public static final int NUM_DISPLAY_LAYERS = 3;
     
@@ -0,0 +1,241 @@
+package model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * One layer of the display list: its movie clips in the order they are
+ * drawn, first to last.
+ *
+ * Every clip on a layer knows which layer it is on and which slot of the
+ * layer's array it is in, so finding, removing, swapping and moving clips
+ * does not search the list. A removed clip leaves an empty slot behind,
+ * and the empty slots are closed up all at once the next time the layer
+ * is read (e.g. when it is drawn), keeping the order of the other clips.
+ * So removing many clips in a tick costs one pass over the layer.
+ *
+ * A layer can also keep its clips sorted by z-index or by y (see
+ * setOrder). It is sorted before every frame is drawn with an insertion
+ * sort, which only moves the clips that changed places since the last
+ * frame. Clips with the same z-index or y keep the order they were
+ * added in, so bringToFront and the like still work among them.
+ *
+ * The layer is a List so it can be looped over and read like one, but it
+ * is read only: its List methods that would change it (add, remove, set,
+ * clear, and remove on its iterators) throw UnsupportedOperationException.
+ * Change it through the model's addChild, removeChild, moveLayer and the
+ * like, which also keep each clip's parent and the spatial hash up to
+ * date.
+ * @author Nick Cheng
+ */
+public class DisplayLayer extends AbstractList<MovieClip> implements RandomAccess {
+
+    /** How the clips of a layer are ordered */
+    public enum Order {
+        /** In the order they were added or moved to, the default */
+        ADDED,
+        /** By MovieClip.zIndex, lowest at the back */
+        Z_INDEX,
+        /** By y, highest on the screen at the back, as in top-down games */
+        Y
+    }
+
+    /** Which layer of the display list this is */
+    public final int index;
+    private Order order = Order.ADDED;
+
+    /** the clips are in slots start to end - 1, with nulls where clips were removed */
+    private MovieClip[] clips = new MovieClip[16];
+    private int start;
+    private int end;
+    private int holes;
+
+    public DisplayLayer(int index) {
+        this.index = index;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    /**
+     * Changes how the clips are ordered. They are sorted the next time
+     * sort is called.
+     * @param order The new order
+     */
+    public void setOrder(Order order) {
+        if (order == null) {
+            throw new IllegalArgumentException("order must not be null");
+        }
+        this.order = order;
+    }
+
+    /**
+     * Sorts the clips if the layer is sorted. The model calls this
+     * before each frame is drawn.
+     * @return Number of clips that were moved
+     */
+    public int sort() {
+        if (order == Order.ADDED) return 0;
+        if (holes > 0) compact();
+        boolean byY = order == Order.Y;
+        int moved = 0;
+        for (int i = start + 1; i < end; i++) {
+            MovieClip mc = clips[i];
+            int k = byY ? mc.y : mc.zIndex;
+            int j = i - 1;
+            if ((byY ? clips[j].y : clips[j].zIndex) <= k) continue;
+            do {
+                clips[j + 1] = clips[j];
+                clips[j + 1].slot = j + 1;
+                j--;
+            } while (j >= start && (byY ? clips[j].y : clips[j].zIndex) > k);
+            clips[j + 1] = mc;
+            mc.slot = j + 1;
+            moved++;
+        }
+        if (moved > 0) modCount++;
+        return moved;
+    }
+
+    /**
+     * Adds a clip in front of the others, taking it off the layer it
+     * was on if any
+     * @param mc The clip to add
+     */
+    void addLast(MovieClip mc) {
+        if (mc.layer != null) mc.layer.removeClip(mc);
+        if (end == clips.length) grow();
+        clips[end] = mc;
+        mc.layer = this;
+        mc.slot = end++;
+        modCount++;
+    }
+
+    /**
+     * Adds a clip behind the others, taking it off the layer it
+     * was on if any
+     * @param mc The clip to add
+     */
+    void addFirst(MovieClip mc) {
+        if (mc.layer != null) mc.layer.removeClip(mc);
+        if (start == 0) grow();
+        clips[--start] = mc;
+        mc.layer = this;
+        mc.slot = start;
+        modCount++;
+    }
+
+    /**
+     * Makes room at both ends, leaving the clips in the middle
+     */
+    private void grow() {
+        int count = end - start;
+        int room = Math.max(8, count / 2);
+        MovieClip[] bigger = new MovieClip[count + 2 * room];
+        System.arraycopy(clips, start, bigger, room, count);
+        clips = bigger;
+        start = room;
+        end = room + count;
+        for (int i = start; i < end; i++) {
+            if (clips[i] != null) clips[i].slot = i;
+        }
+    }
+
+    /**
+     * Takes a clip off the layer. Its slot is emptied and closed up later.
+     * @param mc The clip to remove
+     * @return Whether it was on this layer
+     */
+    boolean removeClip(MovieClip mc) {
+        if (mc.layer != this) return false;
+        clips[mc.slot] = null;
+        holes++;
+        mc.layer = null;
+        mc.slot = -1;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Closes up the slots of removed clips, keeping the others in order
+     */
+    private void compact() {
+        int w = start;
+        for (int i = start; i < end; i++) {
+            MovieClip mc = clips[i];
+            if (mc == null) continue;
+            mc.slot = w;
+            clips[w++] = mc;
+        }
+        Arrays.fill(clips, w, end, null);
+        end = w;
+        holes = 0;
+    }
+
+    /**
+     * Swaps the places of two clips, which can be on different layers
+     */
+    static void swap(MovieClip mc1, MovieClip mc2) {
+        DisplayLayer l1 = mc1.layer;
+        DisplayLayer l2 = mc2.layer;
+        int s1 = mc1.slot;
+        int s2 = mc2.slot;
+        l1.clips[s1] = mc2;
+        l2.clips[s2] = mc1;
+        mc1.layer = l2;
+        mc1.slot = s2;
+        mc2.layer = l1;
+        mc2.slot = s1;
+        l1.modCount++;
+        l2.modCount++;
+    }
+
+    @Override
+    public MovieClip get(int i) {
+        if (holes > 0) compact();
+        if (i < 0 || i >= end - start) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());
+        }
+        return clips[start + i];
+    }
+
+    @Override
+    public int size() {
+        return end - start - holes;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof MovieClip && ((MovieClip) o).layer == this;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!contains(o)) return -1;
+        if (holes > 0) compact();
+        return ((MovieClip) o).slot - start;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    /**
+     * Takes every clip off the layer
+     */
+    void removeAllClips() {
+        for (int i = start; i < end; i++) {
+            if (clips[i] == null) continue;
+            clips[i].layer = null;
+            clips[i].slot = -1;
+            clips[i] = null;
+        }
+        start = 0;
+        end = 0;
+        holes = 0;
+        modCount++;
+    }
+}
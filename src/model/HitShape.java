@@ -0,0 +1,32 @@
+package model;
+
+/**
+ * The shapes MovieClip.hitTest can check for collisions with. Only PIXEL
+ * takes rotation and flipping (a negative scale) into account.
+ * @author Nick Cheng
+ */
+public enum HitShape {
+    /** The rectangle around the current frame */
+    RECTANGLE,
+    /** A circle as wide as the current frame, in its top left corner */
+    CIRCLE,
+    /**
+     * The solid pixels of the current frame (see Constants.HIT_ALPHA),
+     * scaled, flipped and rotated with the movie clip
+     */
+    PIXEL;
+
+    /**
+     * Looks up a shape by name, for the hitTest methods that take a
+     * String
+     * @param name e.g. "circle", in any case
+     * @return The shape, or null if there is none by that name
+     */
+    public static HitShape forName(String name) {
+        if (name == null) return null;
+        for (HitShape s : values()) {
+            if (s.name().equalsIgnoreCase(name)) return s;
+        }
+        return null;
+    }
+}
@@ -2,16 +2,19 @@ package model;
 
 import java.awt.Color;
 import java.awt.Point;
-import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 
 import model.animation.Animation;
+import model.animation.AnimationCache;
+import model.animation.AssetLoader;
 import model.animation.IteratingAnimation;
 import model.animation.IteratingAnimation.Direction;
+import model.animation.SpritePack;
+import model.animation.TextureAtlas;
 import controller.Controller;
 import controller.advancedtools.MiniTimer;
 
@@ -48,7 +51,8 @@ public class Model {
     public MovieClip turret;
     
     public void startGame(){
-        
+        //created on mouse clicks, so read it now rather than on the first click
+        Animation.loader.preload("images/bullethole");
         
         player = new MovieClip("images/guy",true);
         player.x = 200;
@@ -109,40 +113,146 @@ public class Model {
      * for example, everything on layer 1 will be above 
      * everything on layer 0.
      * 
+     * Each clip knows its layer and place in it (see DisplayLayer),
+     * so the methods below that find, remove and reorder clips
+     * take the same time however many clips there are. The layers
+     * can be read like lists but only changed through those methods.
+     * 
+     * A layer can instead be kept sorted by z-index or y, e.g.
+     * displayList.get(1).setOrder(DisplayLayer.Order.Y), and the
+     * number of layers can be changed with setLayerCount.
+     * 
      * If the user does not care about layers, they could simply
      * call addChild without a layer number and everything will
      * be defaulted to layer 0.
      */
-    public List<List<MovieClip>> displayList;
+    public List<DisplayLayer> displayList;
     
     /**
      * These movie clips will be removed on the next time step instead
      * of immediately. Currently the only use for this is for movie clips
      * that delete themselves at the end of playback, since otherwise
      * they would be trying to delete themselves while the iterator
-     * is going through the list
+     * is going through the list. See advanceAnimations. Add to it with
+     * removeNextTime, which marks the clip so that a clip removed and
+     * added again in the meantime is left alone.
      */
     public List<MovieClip>removeQueue;
     
     public Controller controller;
     
+    /**
+     * The movie clips on the display list sorted by where they are,
+     * to quickly find the ones near a place or clip (see SpatialHash)
+     */
+    public SpatialHash spatialHash;
+    
+    /**
+     * Movie clips to use again for things that come and go often.
+     * Clips from here go back to it when they are removed.
+     */
+    public MovieClipPool pool;
+    
     public int levelShiftX = 0;
     public int levelShiftY = 0;
     
     /** Constructor */
     public Model (Controller controller){
         if(Constants.DEBUG) System.out.println("model init, ready.");
-        Animation.loadedAnimations = new HashMap<String, List<BufferedImage>>();
-        displayList = new ArrayList<List<MovieClip>>();
+        //loaded animations are kept when the game restarts
+        if (Animation.cache == null){
+            Animation.atlas = new TextureAtlas(Constants.ATLAS_SIZE);
+            Animation.cache = new AnimationCache(Animation.atlas, Constants.ANIMATION_CACHE_BYTES);
+            Animation.loader = new AssetLoader(Animation.atlas, Animation.cache, Constants.LOADER_THREADS);
+            File pack = new File(Constants.SPRITE_PACK);
+            if (pack.exists()){
+                try {
+                    Animation.loader.setPack(new SpritePack(pack));
+                } catch (IOException e) {
+                    System.err.println("Could not read sprite pack, reading image folders instead: "+e.getMessage());
+                }
+            }
+        }
+        displayList = new ArrayList<DisplayLayer>();
         for (int i=0;i<Constants.NUM_DISPLAY_LAYERS;i++){
-            displayList.add(new ArrayList<MovieClip>());
+            displayList.add(new DisplayLayer(i));
         }
         removeQueue = new ArrayList<MovieClip>();
+        spatialHash = new SpatialHash(Constants.SPATIAL_CELL_SIZE);
+        pool = new MovieClipPool(Constants.POOL_MAX_IDLE);
         this.controller = controller;
     }
     
    
     
+    /**
+     * Remembers where every movie clip is at the start of a
+     * tick, so the view can draw in between ticks. Called by
+     * the frame handler.
+     */
+    public void savePositions(){
+        for (int i=0;i<displayList.size();i++){
+            for (MovieClip mc : displayList.get(i)){
+                mc.prevX = mc.x;
+                mc.prevY = mc.y;
+                mc.hasPrev = true;
+            }
+        }
+    }
+    
+    /**
+     * @return The number of layers in the display list
+     */
+    public int getLayerCount(){
+        return displayList.size();
+    }
+    
+    /**
+     * This will change the number of layers in the display list.
+     * Movie clips on layers that are taken away are removed.
+     * @param count The new number of layers, at least 1
+     */
+    public void setLayerCount(int count){
+        if (count < 1){
+            throw new IllegalArgumentException("There must be at least one layer");
+        }
+        while (displayList.size() > count){
+            removeAllChildrenOnLayer(displayList.size()-1);
+            displayList.remove(displayList.size()-1);
+        }
+        while (displayList.size() < count){
+            displayList.add(new DisplayLayer(displayList.size()));
+        }
+    }
+    
+    /**
+     * The animation step of a tick, called by the frame handler after
+     * the game's own update. It first removes the movie clips that
+     * were given to removeNextTime (e.g. by removeAtEnd on the last
+     * tick, so their last frame was shown once), then moves every
+     * movie clip on the display list on to its next frame, whether
+     * it is on screen or not. The view only draws the current frames.
+     */
+    public void advanceAnimations(){
+        removeQueued();
+        for (int i=0;i<displayList.size();i++){
+            DisplayLayer layer = displayList.get(i);
+            for (int j=0;j<layer.size();j++){
+                layer.get(j).advanceFrame();
+            }
+        }
+    }
+    
+    /**
+     * Sorts the layers that are sorted by z-index or y.
+     * Called by the view before drawing.
+     */
+    public void sortLayers(){
+        for (int i=0;i<displayList.size();i++){
+            displayList.get(i).sort();
+        }
+    }
+    
     /**
      * This will add a movie clip to layer 0 of the
      * display list
@@ -154,15 +264,21 @@ public class Model {
     
     /**
      * This will add a movie clip to a given layer of
-     * the display list. Layers are numbered  0 to DISPLAY_LAYERS (inclusive)
+     * the display list. Layers are numbered  0 to DISPLAY_LAYERS (inclusive).
+     * A movie clip that is already on the display list is moved to
+     * the top of the layer.
      * @param mc The movie clip to add
      * @param layer The layer to add it to
      */
     public void addChild(MovieClip mc, int layer){
-        if(layer>=Constants.NUM_DISPLAY_LAYERS){
+        if(layer>=displayList.size()){
             System.err.println("Layer is out of range");
         }
-        displayList.get(layer).add(mc);
+        if (mc.pooled){
+            mc.pool.reclaim(mc);
+        }
+        displayList.get(layer).addLast(mc);
+        spatialHash.add(mc);
         mc.parent = this;
     }
     
@@ -173,16 +289,11 @@ public class Model {
      * @return The layer that contains the movie clip
      */
     public int layerContaining(MovieClip mc){
-        int layer = -1;
-        for (int i=0;i<Constants.NUM_DISPLAY_LAYERS;i++){
-            if(displayList.get(i).contains(mc)){
-                layer = i;
-            }
-        }
-        if (layer == -1){
+        if (mc.layer == null || mc.parent != this){
             System.err.println("could not find movie clip");
+            return -1;
         }
-        return layer;
+        return mc.layer.index;
     }
     
     /**
@@ -191,9 +302,8 @@ public class Model {
      * @param layer The layer to move it to
      */
     public void moveLayer(MovieClip mc, int layer){
-        int oldLayer = layerContaining(mc);
-        displayList.get(oldLayer).remove(mc);
-        displayList.get(layer).add(mc);
+        if (layerContaining(mc) == -1) return;
+        displayList.get(layer).addLast(mc);
     }
     
     /**
@@ -202,8 +312,22 @@ public class Model {
      * @param mc The movie clip to remove
      */
     public void removeChild(MovieClip mc){
-        int layer = layerContaining(mc);
-        displayList.get(layer).remove(mc);
+        if (layerContaining(mc) == -1) return;
+        mc.layer.removeClip(mc);
+        retire(mc);
+    }
+    
+    /**
+     * Lets go of a movie clip that was taken off the display list,
+     * giving it back to its pool if it came from one
+     */
+    private void retire(MovieClip mc){
+        spatialHash.remove(mc);
+        //it may be handed out and added again before removeQueued runs
+        mc.queuedForRemoval = false;
+        if (mc.pool != null){
+            mc.pool.release(mc);
+        }
     }
     
     /**
@@ -211,16 +335,35 @@ public class Model {
      * @param mc The movie clip to remove
      */
     public void removeNextTime(MovieClip mc){
+        if (mc.queuedForRemoval) return;
+        mc.queuedForRemoval = true;
         removeQueue.add(mc);
     }
     
+    /**
+     * This will remove the movie clips given to removeNextTime.
+     * Called at the start of advanceAnimations.
+     */
+    public void removeQueued(){
+        for (MovieClip mc : removeQueue){
+            //it may have been removed already, and even added again since
+            if (!mc.queuedForRemoval) continue;
+            mc.queuedForRemoval = false;
+            if (mc.layer != null && mc.parent == this){
+                mc.layer.removeClip(mc);
+                retire(mc);
+            }
+        }
+        removeQueue.clear();
+    }
+    
     /**
      * This will remove all movie clips from all layers of
      * the display list
      */
     public void removeAllChildren(){
-        for (int i=0;i<Constants.NUM_DISPLAY_LAYERS;i++){
-            displayList.get(i).clear();
+        for (int i=0;i<displayList.size();i++){
+            removeAllChildrenOnLayer(i);
         }
     }
     
@@ -230,7 +373,10 @@ public class Model {
      * @param layer The layer to remove all children from
      */
     public void removeAllChildrenOnLayer(int layer){
-        displayList.get(layer).clear();
+        for (MovieClip mc : displayList.get(layer)){
+            retire(mc);
+        }
+        displayList.get(layer).removeAllClips();
     }
     
     /**
@@ -238,46 +384,31 @@ public class Model {
      * movie clips can be on the same layer, and they will
      * switch depths, or they can be on different layers in
      * which case the depth within each layer will be preserved.
-     * CAUTION: Linear time
      * @param mc1 The first movie clip
      * @param mc2 The movie clip to switch it with
      */
     public void swapChildren(MovieClip mc1, MovieClip mc2){
-        int l1 = layerContaining(mc1);
-        int l2 = layerContaining(mc2);
-        int p1 = displayList.get(l1).indexOf(mc1);
-        int p2 = displayList.get(l2).indexOf(mc2);
-        
-        if(l1 == l2){
-            //If on same layer
-            Collections.swap(displayList.get(l1), p1, p2);
-        }else{
-            //If on different layers
-            displayList.get(l1).remove(mc1);
-            displayList.get(l2).remove(mc2);
-            displayList.get(l2).add(p2, mc1);
-            displayList.get(l1).add(p1, mc2);
-        }
-        
+        if (layerContaining(mc1) == -1 || layerContaining(mc2) == -1) return;
+        DisplayLayer.swap(mc1, mc2);
     }
     
     /**
-     * This will bring a movie clip to the front of its layer
+     * This will bring a movie clip to the front of its layer.
+     * The others keep their order.
      * @param mc1 The movie clip to move
      */
     public void bringToFront(MovieClip mc1){
-        int layer = layerContaining(mc1);
-        int p1 = displayList.get(layer).indexOf(mc1);
-        Collections.swap(displayList.get(layer), p1, displayList.get(layer).size()-1);
+        if (layerContaining(mc1) == -1) return;
+        mc1.layer.addLast(mc1);
     }
     
     /**
-     * This will send a movie clip to the back of its layer
-     * @param mc1
+     * This will send a movie clip to the back of its layer.
+     * The others keep their order.
+     * @param mc1 The movie clip to move
      */
     public void sendToBack(MovieClip mc1){
-        int layer = layerContaining(mc1);
-        int p1 = displayList.get(layer).indexOf(mc1);
-        Collections.swap(displayList.get(layer), p1, 0);
+        if (layerContaining(mc1) == -1) return;
+        mc1.layer.addFirst(mc1);
     }
 }
@@ -1,12 +1,16 @@
 package model;
 
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 
 import utils.Utils;
 
 import model.animation.AnimationSwapper;
+import model.animation.BitMask;
 import model.animation.IteratingAnimation;
+import model.animation.SpriteFrame;
 
 /**
  * A movie clip is a static image, an animation, or collection of animations to
@@ -30,12 +34,38 @@ public class MovieClip implements IteratingAnimation, MovieClipInterface {
     public int x;
     /** Directly alter this to change y position */
     public int y;
+    /**
+     * Where this is drawn on a layer sorted by z-index (see
+     * DisplayLayer.Order): higher is in front
+     */
+    public int zIndex;
+    /** position at the start of the last tick, for interpolated drawing */
+    public int prevX;
+    public int prevY;
+    /** whether prevX and prevY have been saved since the clip was created */
+    public boolean hasPrev;
+    /**
+     * How this clip was last drawn: its screen bounds, placement and
+     * frame. The view compares these with the next frame to find the
+     * parts of the screen that need drawing again. Do not alter.
+     */
+    public final Rectangle drawnBounds = new Rectangle();
+    public final AffineTransform drawnTransform = new AffineTransform();
+    public SpriteFrame drawnFrame;
+    /** the frame number and display list position this clip was last drawn at */
+    public int drawnStamp;
+    public int drawnIndex;
     /** Directly alter this to change rotation in radians */
     public double rotation;
     /** Directly alter this to change x scale. 1 = normal*/
     public double scaleX;
     /** Directly alter this to change y scale. 1 = normal*/
     public double scaleY;
+    /**
+     * Set to always draw this clip at its exact rotation, instead of
+     * a pre-rendered copy at the nearest of Constants.ROTATION_STEPS angles
+     */
+    public boolean exactRotation;
     
 
     /** shift added to all images, for use in setOrigin */
@@ -48,6 +78,17 @@ public class MovieClip implements IteratingAnimation, MovieClipInterface {
     private boolean removing;
 
     public Model parent;
+    
+    /** the display layer this is on and its slot there, see DisplayLayer */
+    DisplayLayer layer;
+    int slot = -1;
+    /** the pool this came from and its key there, see MovieClipPool */
+    MovieClipPool pool;
+    String poolKey;
+    /** whether this is waiting in its pool */
+    boolean pooled;
+    /** whether this is in the model's removeQueue for its current time on the display list */
+    boolean queuedForRemoval;
 
     private AnimationSwapper anims;
 
@@ -80,6 +121,18 @@ public class MovieClip implements IteratingAnimation, MovieClipInterface {
         id = getNextID();
     }
     
+    /**
+     * Constructor for subclasses that draw themselves some other way
+     * (see SpriteBatch). They have no animation, so must override
+     * the methods that use one.
+     */
+    protected MovieClip() {
+        scaleX = 1;
+        scaleY = 1;
+        looping = true;
+        id = getNextID();
+    }
+    
     /**
      * Constructor for MovieClip if you only have one animation. This
      * takes in the path to the folder that contains the frames.
@@ -145,44 +198,163 @@ public class MovieClip implements IteratingAnimation, MovieClipInterface {
     @Override
     public boolean hitTest(MovieClip mc){
         //maybe top left is off
-        Point cd = getDimensions();
-        Point mcd = mc.getDimensions();
-        int sx = (int) (shiftX * scaleX);
-        int sy = (int) (shiftY * scaleY);
-        int sx2 = (int) (mc.shiftX * mc.scaleX);
-        int sy2 = (int) (mc.shiftY * mc.scaleY);
-        return Utils.rect_collision(new Point(x+sx,y+sy), cd.x, cd.y, 
-                                    new Point(mc.x+sx2,mc.y+sy2), mcd.x, mcd.y);
+        return Utils.rect_collision(getLeft(), getTop(), getWidth(), getHeight(),
+                                    mc.getLeft(), mc.getTop(), mc.getWidth(), mc.getHeight());
     }
     
     
     /**
      * This will determine if the current movie clip is overlapping
-     * another movie clip determined by shaped boundaries. The only
-     * option currently is circle, which fits circles inside the boundaries
-     * of both movie clips and checks for collision.
+     * another movie clip determined by shaped boundaries. Circle fits
+     * circles inside the boundaries of both movie clips, and pixel
+     * checks whether any solid pixels of their current frames overlap,
+     * with the frames scaled, flipped and rotated as they are drawn.
      * @param mc The movie clip to test against
-     * @param shape Use "circle"
+     * @param shape The shape to test with
      * @return Whether they are overlapping
      */
     @Override
-    public boolean hitTest(MovieClip mc, String shape){
-        if(shape == "circle"){
-            Point cd = getDimensions();
-            Point mcd = mc.getDimensions();
-            int r1 = (int) (cd.x/2);
-            int r2 = (int) (mcd.x/2);
-            int sx = (int) (shiftX * scaleX);
-            int sy = (int) (shiftY * scaleY);
-            int sx2 = (int) (mc.shiftX * mc.scaleX);
-            int sy2 = (int) (mc.shiftY * mc.scaleY);
-            Point center1 = new Point(x+sx+r1,y+sy+r1);
-            Point center2 = new Point(mc.x+sx2+r2,mc.y+sy2+r2);
-            return Utils.circle_collision(center1, r1, center2, r2);
+    public boolean hitTest(MovieClip mc, HitShape shape){
+        switch(shape){
+            case CIRCLE:
+                int r1 = getWidth()/2;
+                int r2 = mc.getWidth()/2;
+                return Utils.circle_collision(getLeft()+r1, getTop()+r1, r1,
+                                              mc.getLeft()+r2, mc.getTop()+r2, r2);
+            case PIXEL:
+                if(isTurnedOrFlipped() || mc.isTurnedOrFlipped()){
+                    return pixelHitTurned(mc);
+                }
+                int left = getLeft();
+                int top = getTop();
+                int w1 = getWidth();
+                int h1 = getHeight();
+                int mcLeft = mc.getLeft();
+                int mcTop = mc.getTop();
+                int w2 = mc.getWidth();
+                int h2 = mc.getHeight();
+                if(!Utils.rect_collision(left, top, w1, h1, mcLeft, mcTop, w2, h2)){
+                    return false;
+                }
+                SpriteFrame f1 = getCurrentSpriteFrame();
+                SpriteFrame f2 = mc.getCurrentSpriteFrame();
+                if(f1 == null || f2 == null){
+                    //no single frame (e.g. a sprite batch), so the rectangle will do
+                    return true;
+                }
+                return f1.getMask(w1, h1).overlaps(f2.getMask(w2, h2), mcLeft - left, mcTop - top);
+            default:
+                return hitTest(mc);
+        }
+    }
+    
+    /**
+     * Whether the pixel test has to go through the clip's rotation or
+     * flip, instead of comparing scaled masks
+     */
+    private boolean isTurnedOrFlipped(){
+        return isTransformed() && (rotation != 0 || scaleX < 0 || scaleY < 0);
+    }
+    
+    /**
+     * The pixel test for clips that are rotated or flipped: every pixel
+     * where the two clips' rectangles overlap is looked up in both
+     * masks, through the way each clip is drawn
+     */
+    private boolean pixelHitTurned(MovieClip mc){
+        Rectangle overlap = getPixelBounds().intersection(mc.getPixelBounds());
+        if(overlap.isEmpty()){
+            return false;
+        }
+        SpriteFrame f1 = getCurrentSpriteFrame();
+        SpriteFrame f2 = mc.getCurrentSpriteFrame();
+        if(f1 == null || f2 == null){
+            return true;
+        }
+        BitMask m1 = f1.getMask();
+        BitMask m2 = f2.getMask();
+        double cos1 = Math.cos(rotation), sin1 = Math.sin(rotation);
+        double cos2 = Math.cos(mc.rotation), sin2 = Math.sin(mc.rotation);
+        for(int py = overlap.y; py < overlap.y + overlap.height; py++){
+            for(int px = overlap.x; px < overlap.x + overlap.width; px++){
+                if(solidAt(m1, cos1, sin1, px + 0.5, py + 0.5)
+                        && mc.solidAt(m2, cos2, sin2, px + 0.5, py + 0.5)){
+                    return true;
+                }
+            }
         }
         return false;
     }
     
+    /**
+     * The rectangle the current frame covers once scaled, flipped and
+     * rotated the way it is drawn
+     */
+    private Rectangle getPixelBounds(){
+        Rectangle r = new Rectangle();
+        getPixelBounds(r);
+        return r;
+    }
+    
+    /**
+     * Same as getPixelBounds(), into a given rectangle (for the spatial hash)
+     * @param r Receives the bounds
+     */
+    void getPixelBounds(Rectangle r){
+        if(!isTurnedOrFlipped()){
+            r.setBounds(getLeft(), getTop(), getWidth(), getHeight());
+            return;
+        }
+        //a frame pixel u,v is drawn at x,y + the rotation of (scaleX*(u+shiftX), scaleY*(v+shiftY))
+        double cos = Math.cos(rotation);
+        double sin = Math.sin(rotation);
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for(int corner = 0; corner < 4; corner++){
+            double ax = scaleX * ((corner & 1) * anims.getWidth() + shiftX);
+            double ay = scaleY * ((corner >> 1) * anims.getHeight() + shiftY);
+            double cx = x + cos * ax - sin * ay;
+            double cy = y + sin * ax + cos * ay;
+            minX = Math.min(minX, cx);
+            minY = Math.min(minY, cy);
+            maxX = Math.max(maxX, cx);
+            maxY = Math.max(maxY, cy);
+        }
+        int left = (int) Math.floor(minX);
+        int top = (int) Math.floor(minY);
+        r.setBounds(left, top, (int) Math.ceil(maxX) - left, (int) Math.ceil(maxY) - top);
+    }
+    
+    /**
+     * Whether a point on the screen falls on a solid pixel of the
+     * current frame, undoing the rotation and scale it is drawn with
+     * @param mask The current frame's mask
+     * @param cos Cosine of the rotation
+     * @param sin Sine of the rotation
+     */
+    private boolean solidAt(BitMask mask, double cos, double sin, double px, double py){
+        if(scaleX == 0 || scaleY == 0){
+            return false;
+        }
+        double dx = px - x;
+        double dy = py - y;
+        double u = (cos * dx + sin * dy) / scaleX - shiftX;
+        double v = (cos * dy - sin * dx) / scaleY - shiftY;
+        return mask.get((int) Math.floor(u), (int) Math.floor(v));
+    }
+    
+    /**
+     * Same as hitTest(MovieClip, HitShape), with the shape by name
+     * @param mc The movie clip to test against
+     * @param shape "rectangle", "circle" or "pixel"
+     * @return Whether they are overlapping, false if there is no such shape
+     */
+    @Override
+    public boolean hitTest(MovieClip mc, String shape){
+        HitShape s = HitShape.forName(shape);
+        return s != null && hitTest(mc, s);
+    }
+    
     /**
      * This will determine if the current movie clip overlaps a given
      * point, using rectangular boundaries.
@@ -191,34 +363,93 @@ public class MovieClip implements IteratingAnimation, MovieClipInterface {
      */
     @Override
     public boolean hitTest(Point p){
-        Point cd = getDimensions();
-        int sx = (int) (shiftX * scaleX);
-        int sy = (int) (shiftY * scaleY);
-        boolean xbounded = x+sx <= p.x && p.x <= x+sx+ cd.x;
-        boolean ybounded = y+sy <= p.y && p.y <= y+sy+ cd.y; 
+        return hitTest(p.x, p.y);
+    }
+    
+    /**
+     * This will determine if the current movie clip overlaps a given
+     * point, using rectangular boundaries. Same as hitTest(Point), 
+     * without needing a Point.
+     * @param px The x coordinate of the point
+     * @param py The y coordinate of the point
+     * @return Whether it overlaps
+     */
+    @Override
+    public boolean hitTest(int px, int py){
+        int left = getLeft();
+        int top = getTop();
+        boolean xbounded = left <= px && px <= left + getWidth();
+        boolean ybounded = top <= py && py <= top + getHeight(); 
         return xbounded && ybounded;
     }
     
     /**
      * This will determine if the current movie clip is overlapping
-     * a point determined by shaped boundaries. The only
-     * option currently is circle, which fits circles inside the boundaries
-     * of the movie and checks for collision.
+     * a point determined by shaped boundaries, as in
+     * hitTest(MovieClip, HitShape).
      * @param p The point to test against
-     * @param shape Use "circle"
+     * @param shape The shape to test with
      * @return Whether they are overlapping
      */
     @Override
-    public boolean hitTest(Point p, String shape){
-        if(shape == "circle"){
-            Point cd = getDimensions();
-            int r1 = (int) (cd.x/2);
-            int sx = (int) (shiftX * scaleX);
-            int sy = (int) (shiftY * scaleY);
-            Point center1 = new Point(x+sx+r1,y+sy+r1);
-            return Utils.circle_collision(center1, r1, p, 0);
+    public boolean hitTest(Point p, HitShape shape){
+        return hitTest(p.x, p.y, shape);
+    }
+    
+    /**
+     * Same as hitTest(Point, HitShape), without needing a Point.
+     * @param px The x coordinate of the point
+     * @param py The y coordinate of the point
+     * @param shape The shape to test with
+     * @return Whether they are overlapping
+     */
+    @Override
+    public boolean hitTest(int px, int py, HitShape shape){
+        switch(shape){
+            case CIRCLE:
+                int r1 = getWidth()/2;
+                return Utils.circle_collision(getLeft()+r1, getTop()+r1, r1, px, py, 0);
+            case PIXEL:
+                if(isTurnedOrFlipped() && getCurrentSpriteFrame() != null){
+                    return solidAt(getCurrentSpriteFrame().getMask(), Math.cos(rotation), Math.sin(rotation),
+                                   px + 0.5, py + 0.5);
+                }
+                int dx = px - getLeft();
+                int dy = py - getTop();
+                if(dx < 0 || dy < 0 || dx >= getWidth() || dy >= getHeight()){
+                    return false;
+                }
+                SpriteFrame f = getCurrentSpriteFrame();
+                if(f == null) return true;
+                //look the point up in the unscaled mask
+                return f.getMask().get((int) (dx / scaleX), (int) (dy / scaleY));
+            default:
+                return hitTest(px, py);
         }
-        return false;
+    }
+    
+    /**
+     * Same as hitTest(Point, HitShape), with the shape by name
+     * @param p The point to test against
+     * @param shape "rectangle", "circle" or "pixel"
+     * @return Whether they are overlapping, false if there is no such shape
+     */
+    @Override
+    public boolean hitTest(Point p, String shape){
+        return hitTest(p.x, p.y, shape);
+    }
+    
+    /**
+     * Same as hitTest(Point, String), without needing a Point.
+     * @param px The x coordinate of the point
+     * @param py The y coordinate of the point
+     * @param shape "rectangle", "circle" or "pixel"
+     * @return Whether they are overlapping, false if there is no such shape
+     */
+    @Override
+    public boolean hitTest(int px, int py, String shape){
+        HitShape s = HitShape.forName(shape);
+        return s != null && hitTest(px, py, s);
     }
     
     /**
@@ -242,15 +473,42 @@ public class MovieClip implements IteratingAnimation, MovieClipInterface {
      */
     @Override
     public BufferedImage getNextFrame() {
-        BufferedImage result =  anims.getNextFrame();
+        return getNextSpriteFrame().getImage();
+    }
+    
+    /**
+     * Same as getNextFrame, but gives the frame's place on its sheet
+     * @return The next frame
+     */
+    @Override
+    public SpriteFrame getNextSpriteFrame() {
+        advanceFrame();
+        return getCurrentSpriteFrame();
+    }
+    
+    /**
+     * This will move the current animation on to its next frame,
+     * stopping or removing the movie clip at the end if it was asked
+     * to. The model calls this for every movie clip on the display
+     * list once a tick (see Model.advanceAnimations).
+     */
+    public void advanceFrame() {
+        anims.getNextSpriteFrame();
         if(!looping && anims.isAtEnd()){
             setDirection(Direction.PAUSED);
         }
         
-        if(removing && anims.isAtEnd()){
+        if(removing && anims.isAtEnd() && parent != null){
             parent.removeNextTime(this);
         }
-        return result;
+    }
+    
+    /**
+     * The frame of the current animation to draw, without moving on
+     * @return The current frame
+     */
+    public SpriteFrame getCurrentSpriteFrame() {
+        return anims.getCurrentSpriteFrame();
     }
 
     /**
@@ -337,6 +595,29 @@ public class MovieClip implements IteratingAnimation, MovieClipInterface {
         removing = true;
     }
     
+    /**
+     * Puts this back how the constructor made it, for MovieClipPool
+     */
+    void reset(){
+        x = 0;
+        y = 0;
+        prevX = 0;
+        prevY = 0;
+        hasPrev = false;
+        zIndex = 0;
+        rotation = 0;
+        scaleX = 1;
+        scaleY = 1;
+        shiftX = 0;
+        shiftY = 0;
+        exactRotation = false;
+        looping = true;
+        removing = false;
+        parent = null;
+        queuedForRemoval = false;
+        anims.reset();
+    }
+    
     /**
      * This will return the current playing animation
      * @return A string that represents the animation name
@@ -360,9 +641,43 @@ public class MovieClip implements IteratingAnimation, MovieClipInterface {
      * @return A point (width,height)
      */
     public Point getDimensions () {
-        int dimx =  (int) (anims.getDimensions().x * scaleX);
-        int dimy =  (int) (anims.getDimensions().y * scaleY);
-        return new Point(dimx,dimy);
+        return new Point(getWidth(),getHeight());
+    }
+    
+    /**
+     * Width of the currently playing animation, scaled.
+     * Same as getDimensions().x without making a Point.
+     * @return The width in pixels
+     */
+    public int getWidth () {
+        return (int) (anims.getWidth() * scaleX);
+    }
+    
+    /**
+     * Height of the currently playing animation, scaled.
+     * Same as getDimensions().y without making a Point.
+     * @return The height in pixels
+     */
+    public int getHeight () {
+        return (int) (anims.getHeight() * scaleY);
+    }
+    
+    /**
+     * Left edge of the clip's bounding rectangle (as used by
+     * hitTest), taking the origin and scale into account
+     * @return The x coordinate of the left edge
+     */
+    public int getLeft () {
+        return x + (int) (shiftX * scaleX);
+    }
+    
+    /**
+     * Top edge of the clip's bounding rectangle (as used by
+     * hitTest), taking the origin and scale into account
+     * @return The y coordinate of the top edge
+     */
+    public int getTop () {
+        return y + (int) (shiftY * scaleY);
     }
     
     public boolean isTransformed () {
@@ -47,9 +47,14 @@ public interface MovieClipInterface {
      * @return Whether they are overlapping
      */
     public boolean hitTest(MovieClip mc);
+    public boolean hitTest(MovieClip mc, HitShape shape);
     public boolean hitTest(MovieClip mc, String shape);
     public boolean hitTest(Point p);
+    public boolean hitTest(Point p, HitShape shape);
     public boolean hitTest(Point p, String shape);
+    public boolean hitTest(int px, int py);
+    public boolean hitTest(int px, int py, HitShape shape);
+    public boolean hitTest(int px, int py, String shape);
     
     /**
      * This will alter the rotation of an object to have its right side aim
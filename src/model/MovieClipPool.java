@@ -0,0 +1,221 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Keeps movie clips that have been taken off the display list so they
+ * can be used again, instead of making new ones for things that come
+ * and go all the time (bullet holes, explosions).
+ *
+ * Get clips with obtain instead of new MovieClip. When the model takes
+ * such a clip off the display list (removeChild, removeAtEnd, or one of
+ * the remove all methods) it comes back here, so do not use it after
+ * that. Adding it back to the display list before it is handed out
+ * again takes it out of the pool.
+ *
+ * At most maxIdle clips are kept for each path; past that, returned
+ * clips are left to the garbage collector. Like the display list, use
+ * the pool from the game's tick or while holding the model.
+ * @author Nick Cheng
+ */
+public class MovieClipPool {
+    private final HashMap<String, ArrayDeque<MovieClip>> idle = new HashMap<String, ArrayDeque<MovieClip>>();
+    private int maxIdle;
+    private int idleCount;
+
+    private long created;
+    private long reused;
+    private long returned;
+    private long dropped;
+
+    /**
+     * @param maxIdle Most clips to keep for each path
+     */
+    public MovieClipPool(int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("maxIdle must not be negative");
+        }
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Gets a movie clip of one animation, as new MovieClip(path) would
+     * make it
+     * @param path Path to a folder of frames or a single image
+     * @return The clip
+     */
+    public MovieClip obtain(String path) {
+        return obtain(path, false);
+    }
+
+    /**
+     * Gets a movie clip, as new MovieClip(path, multipleAnims) would
+     * make it: at 0,0 with no origin, rotation or scale, playing its
+     * first animation from the start
+     * @param path Path to the animation folder, or folder of folders
+     * @param multipleAnims Is this a folder of folders?
+     * @return The clip
+     */
+    public MovieClip obtain(String path, boolean multipleAnims) {
+        String key = key(path, multipleAnims);
+        ArrayDeque<MovieClip> clips = idle.get(key);
+        MovieClip mc = clips == null ? null : clips.pollLast();
+        if (mc == null) {
+            created++;
+            mc = new MovieClip(path, multipleAnims);
+            mc.pool = this;
+            mc.poolKey = key;
+            return mc;
+        }
+        idleCount--;
+        reused++;
+        mc.pooled = false;
+        mc.reset();
+        return mc;
+    }
+
+    /**
+     * Makes clips ahead of time, e.g. while a level loads
+     * @param path Path to the animation folder, or folder of folders
+     * @param multipleAnims Is this a folder of folders?
+     * @param count Number of clips to have waiting, up to maxIdle
+     */
+    public void prefill(String path, boolean multipleAnims, int count) {
+        String key = key(path, multipleAnims);
+        for (int i = getIdleCount(key); i < Math.min(count, maxIdle); i++) {
+            MovieClip mc = new MovieClip(path, multipleAnims);
+            mc.pool = this;
+            mc.poolKey = key;
+            created++;
+            keep(mc);
+        }
+    }
+
+    /**
+     * Takes back a clip the model removed from the display list
+     */
+    void release(MovieClip mc) {
+        if (mc.pool != this || mc.pooled) return;
+        returned++;
+        if (getIdleCount(mc.poolKey) >= maxIdle) {
+            dropped++;
+            return;
+        }
+        keep(mc);
+    }
+
+    private void keep(MovieClip mc) {
+        ArrayDeque<MovieClip> clips = idle.get(mc.poolKey);
+        if (clips == null) {
+            clips = new ArrayDeque<MovieClip>();
+            idle.put(mc.poolKey, clips);
+        }
+        clips.addLast(mc);
+        mc.pooled = true;
+        idleCount++;
+    }
+
+    /**
+     * Takes a waiting clip out of the pool because it was added back
+     * to the display list
+     */
+    void reclaim(MovieClip mc) {
+        if (mc.pool != this || !mc.pooled) return;
+        idle.get(mc.poolKey).remove(mc);
+        mc.pooled = false;
+        idleCount--;
+    }
+
+    private static String key(String path, boolean multipleAnims) {
+        return multipleAnims ? path + "/*" : path;
+    }
+
+    private int getIdleCount(String key) {
+        ArrayDeque<MovieClip> clips = idle.get(key);
+        return clips == null ? 0 : clips.size();
+    }
+
+    /**
+     * @param path Path given to obtain
+     * @param multipleAnims As given to obtain
+     * @return Number of clips waiting for that path
+     */
+    public int getIdleCount(String path, boolean multipleAnims) {
+        return getIdleCount(key(path, multipleAnims));
+    }
+
+    /** @return Number of clips waiting, for all paths */
+    public int getIdleCount() {
+        return idleCount;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * Changes how many clips are kept for each path, letting go of
+     * any past the new limit
+     * @param maxIdle Most clips to keep for each path
+     */
+    public void setMaxIdle(int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("maxIdle must not be negative");
+        }
+        this.maxIdle = maxIdle;
+        for (ArrayDeque<MovieClip> clips : idle.values()) {
+            while (clips.size() > maxIdle) {
+                clips.pollFirst().pooled = false;
+                idleCount--;
+                dropped++;
+            }
+        }
+    }
+
+    /** Lets go of every waiting clip */
+    public void clear() {
+        for (ArrayDeque<MovieClip> clips : idle.values()) {
+            for (MovieClip mc : clips) {
+                mc.pooled = false;
+            }
+        }
+        idle.clear();
+        idleCount = 0;
+    }
+
+    /** @return Number of clips made because none were waiting */
+    public long getCreated() {
+        return created;
+    }
+
+    /** @return Number of clips handed out again */
+    public long getReused() {
+        return reused;
+    }
+
+    /** @return Number of clips the model gave back */
+    public long getReturned() {
+        return returned;
+    }
+
+    /** @return Number of clips let go because the pool was full */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return Fraction of obtains that reused a clip, 0 if there were none
+     */
+    public double getReuseRate() {
+        long total = created + reused;
+        return total == 0 ? 0 : (double) reused / total;
+    }
+
+    public void resetStats() {
+        created = 0;
+        reused = 0;
+        returned = 0;
+        dropped = 0;
+    }
+}
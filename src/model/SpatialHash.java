@@ -0,0 +1,347 @@
+package model;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A broad phase for collisions: it sorts the movie clips on the display
+ * list into a grid of square cells by their bounding rectangles, so that
+ * finding what a clip might be touching only looks at the clips in the
+ * same cells instead of every clip in the game.
+ *
+ * Only cells that have clips in them are stored, so the grid has no
+ * edges and clips can be anywhere. The model adds and removes clips as
+ * they are added to and removed from the display list, and the frame
+ * handler calls update at the start of every tick to move clips that
+ * moved. Clips also move during the tick (in enterFrame), after that
+ * update, so queries look that much further: as far as any clip moved
+ * between the last two updates. A clip that moves further than that in
+ * one tick (e.g. one that jumps to a new place) can be missed until the
+ * next update, so call update after moving clips that far.
+ *
+ * Queries give every clip whose bounds overlap. A clip's bounds hold the
+ * rectangle hitTest(MovieClip) uses, the circle hitTest(MovieClip,
+ * HitShape.CIRCLE) uses, and the frame as it is drawn, flipped and
+ * rotated, which HitShape.PIXEL uses. A flipped clip (negative scale)
+ * has its edges swapped back. The find methods then check each one with
+ * hitTest, so the shapes work as they do with hitTest.
+ * @author Nick Cheng
+ */
+public class SpatialHash {
+
+    /** A clip and the cells it is in */
+    private static class Item {
+        final MovieClip mc;
+        int minX, minY, maxX, maxY;
+        /** the clip's bounds at the last update */
+        int left, top, right, bottom;
+        /** the last query that found this clip, so it is only reported once */
+        int stamp;
+
+        Item(MovieClip mc) {
+            this.mc = mc;
+        }
+    }
+
+    private final int cellSize;
+    private final HashMap<Long, List<Item>> cells = new HashMap<Long, List<Item>>();
+    private final HashMap<MovieClip, Item> items = new HashMap<MovieClip, Item>();
+    private int stamp;
+    /** furthest an edge of any clip moved between the last two updates */
+    private int margin;
+    private final Rectangle bounds = new Rectangle();
+    private final Rectangle drawn = new Rectangle();
+    private final List<MovieClip> scratch = new ArrayList<MovieClip>();
+    private final Item moved = new Item(null);
+
+    /**
+     * @param cellSize Width and height of a cell in pixels. About the size
+     *      of the clips that move around most works well.
+     */
+    public SpatialHash(int cellSize) {
+        if (cellSize < 1) {
+            throw new IllegalArgumentException("cellSize must be at least 1");
+        }
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Adds a clip. Adding a clip that is already in does nothing.
+     * @param mc The clip to add
+     */
+    public void add(MovieClip mc) {
+        if (items.containsKey(mc)) return;
+        Item item = new Item(mc);
+        items.put(mc, item);
+        boundsOf(mc, bounds);
+        setCells(item, bounds);
+        setEdges(item, bounds);
+        insert(item);
+    }
+
+    /**
+     * Removes a clip
+     * @param mc The clip to remove
+     */
+    public void remove(MovieClip mc) {
+        Item item = items.remove(mc);
+        if (item != null) erase(item);
+    }
+
+    public void clear() {
+        items.clear();
+        cells.clear();
+    }
+
+    public boolean contains(MovieClip mc) {
+        return items.containsKey(mc);
+    }
+
+    /** @return Number of clips in the grid */
+    public int size() {
+        return items.size();
+    }
+
+    /** @return Number of cells with clips in them */
+    public int getCellCount() {
+        return cells.size();
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Moves every clip whose bounding rectangle now covers
+     * different cells. Clips that stayed in their cells cost a
+     * few comparisons.
+     */
+    public void update() {
+        int furthest = 0;
+        for (Item item : items.values()) {
+            boundsOf(item.mc, bounds);
+            furthest = Math.max(furthest, Math.max(
+                    Math.max(Math.abs(bounds.x - item.left), Math.abs(bounds.y - item.top)),
+                    Math.max(Math.abs(bounds.x + bounds.width - item.right),
+                            Math.abs(bounds.y + bounds.height - item.bottom))));
+            setEdges(item, bounds);
+            setCells(moved, bounds);
+            if (moved.minX == item.minX && moved.minY == item.minY
+                    && moved.maxX == item.maxX && moved.maxY == item.maxY) continue;
+            erase(item);
+            item.minX = moved.minX;
+            item.minY = moved.minY;
+            item.maxX = moved.maxX;
+            item.maxY = moved.maxY;
+            insert(item);
+        }
+        margin = furthest;
+    }
+
+    /**
+     * @return How much further than asked queries look, for clips that
+     *      moved since the last update
+     */
+    public int getMargin() {
+        return margin;
+    }
+
+    /**
+     * Finds the clips whose bounds overlap a rectangle
+     * @param r The rectangle
+     * @param out Receives the clips; it is not cleared first
+     * @return out
+     */
+    public List<MovieClip> query(Rectangle r, List<MovieClip> out) {
+        return query(r.x, r.y, r.width, r.height, null, out);
+    }
+
+    /**
+     * Finds the clips whose bounds contain a point
+     * @param p The point
+     * @param out Receives the clips; it is not cleared first
+     * @return out
+     */
+    public List<MovieClip> query(Point p, List<MovieClip> out) {
+        return query(p.x, p.y, 0, 0, null, out);
+    }
+
+    /**
+     * Finds the other clips whose bounds overlap a clip's
+     * @param mc The clip. It does not have to be in the grid.
+     * @param out Receives the clips; it is not cleared first
+     * @return out
+     */
+    public List<MovieClip> query(MovieClip mc, List<MovieClip> out) {
+        boundsOf(mc, bounds);
+        return query(bounds.x, bounds.y, bounds.width, bounds.height, mc, out);
+    }
+
+    /**
+     * Finds the clips whose rectangles overlap x,y,w,h (edges touching count,
+     * as in Utils.rect_collision)
+     */
+    private List<MovieClip> query(int x, int y, int w, int h, MovieClip skip, List<MovieClip> out) {
+        stamp++;
+        //clips are still in the cells of where they were at the last update
+        int minX = cellOf(x - margin);
+        int minY = cellOf(y - margin);
+        int maxX = cellOf(x + w + margin);
+        int maxY = cellOf(y + h + margin);
+        if ((long) (maxX - minX + 1) * (maxY - minY + 1) > cells.size()) {
+            //more cells to look in than there are, e.g. after a clip jumped far
+            for (List<Item> cell : cells.values()) {
+                collect(cell, x, y, w, h, skip, out);
+            }
+            return out;
+        }
+        for (int cy = minY; cy <= maxY; cy++) {
+            for (int cx = minX; cx <= maxX; cx++) {
+                List<Item> cell = cells.get(key(cx, cy));
+                if (cell != null) collect(cell, x, y, w, h, skip, out);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Adds the clips of a cell that overlap x,y,w,h and were not already
+     * found by this query
+     */
+    private void collect(List<Item> cell, int x, int y, int w, int h, MovieClip skip, List<MovieClip> out) {
+        for (int i = 0; i < cell.size(); i++) {
+            Item item = cell.get(i);
+            if (item.stamp == stamp || item.mc == skip) continue;
+            item.stamp = stamp;
+            boundsOf(item.mc, bounds);
+            if (bounds.x <= x + w && x <= bounds.x + bounds.width
+                    && bounds.y <= y + h && y <= bounds.y + bounds.height) {
+                out.add(item.mc);
+            }
+        }
+    }
+
+    /**
+     * Finds the clips that a clip is hitting
+     * @param mc The clip
+     * @param shape The shape to test with, or null for bounding rectangles
+     * @param out Receives the clips; it is not cleared first
+     * @return out
+     */
+    public List<MovieClip> findHits(MovieClip mc, HitShape shape, List<MovieClip> out) {
+        scratch.clear();
+        query(mc, scratch);
+        for (MovieClip other : scratch) {
+            if (shape == null ? mc.hitTest(other) : mc.hitTest(other, shape)) {
+                out.add(other);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Finds every pair of clips that are hitting each other. Each
+     * pair is given once. This updates the grid first, as it looks at
+     * every clip anyway.
+     * @param shape The shape to test with, or null for bounding rectangles
+     * @return The pairs, as arrays of two clips
+     */
+    public List<MovieClip[]> findPairs(HitShape shape) {
+        update();
+        List<MovieClip[]> pairs = new ArrayList<MovieClip[]>();
+        for (List<Item> cell : cells.values()) {
+            for (int i = 0; i < cell.size(); i++) {
+                Item a = cell.get(i);
+                for (int j = i + 1; j < cell.size(); j++) {
+                    Item b = cell.get(j);
+                    //clips that share several cells are only checked in the first of them
+                    if (!firstSharedCell(a, b, cell)) continue;
+                    if (shape == null ? a.mc.hitTest(b.mc) : a.mc.hitTest(b.mc, shape)) {
+                        pairs.add(new MovieClip[] {a.mc, b.mc});
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Whether a cell is the top left one of the cells two clips share
+     */
+    private boolean firstSharedCell(Item a, Item b, List<Item> cell) {
+        int cx = Math.max(a.minX, b.minX);
+        int cy = Math.max(a.minY, b.minY);
+        return cells.get(key(cx, cy)) == cell;
+    }
+
+    /**
+     * The bounds of a clip: around its hitTest rectangle, its circle (the
+     * circle's diameter is the width) and its frame as drawn
+     */
+    private void boundsOf(MovieClip mc, Rectangle r) {
+        int left = mc.getLeft();
+        int top = mc.getTop();
+        int w = mc.getWidth();
+        int h = mc.getHeight();
+        //a negative width or height (a flip) puts the edge on the other side
+        r.setBounds(Math.min(left, left + w), Math.min(top, top + h), Math.abs(w), Math.abs(h));
+        int radius = w / 2;
+        int reach = Math.abs(radius);
+        r.add(left + radius - reach, top + radius - reach);
+        r.add(left + radius + reach, top + radius + reach);
+        mc.getPixelBounds(drawn);
+        r.add(drawn);
+    }
+
+    private void setCells(Item item, Rectangle r) {
+        item.minX = cellOf(r.x);
+        item.minY = cellOf(r.y);
+        item.maxX = cellOf(r.x + r.width);
+        item.maxY = cellOf(r.y + r.height);
+    }
+
+    private static void setEdges(Item item, Rectangle r) {
+        item.left = r.x;
+        item.top = r.y;
+        item.right = r.x + r.width;
+        item.bottom = r.y + r.height;
+    }
+
+    private void insert(Item item) {
+        for (int cy = item.minY; cy <= item.maxY; cy++) {
+            for (int cx = item.minX; cx <= item.maxX; cx++) {
+                Long k = key(cx, cy);
+                List<Item> cell = cells.get(k);
+                if (cell == null) {
+                    cell = new ArrayList<Item>(4);
+                    cells.put(k, cell);
+                }
+                cell.add(item);
+            }
+        }
+    }
+
+    private void erase(Item item) {
+        for (int cy = item.minY; cy <= item.maxY; cy++) {
+            for (int cx = item.minX; cx <= item.maxX; cx++) {
+                Long k = key(cx, cy);
+                List<Item> cell = cells.get(k);
+                if (cell == null) continue;
+                cell.remove(item);
+                if (cell.isEmpty()) cells.remove(k);
+            }
+        }
+    }
+
+    /** the cell a coordinate is in, rounding down for negatives too */
+    private int cellOf(int v) {
+        return v >= 0 ? v / cellSize : -((-v - 1) / cellSize) - 1;
+    }
+
+    private static Long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+}
@@ -0,0 +1,425 @@
+package model;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import model.animation.Animation;
+import model.animation.IteratingAnimation.Direction;
+import model.animation.SpriteFrame;
+
+/**
+ * Many small animated sprites (bullet holes, sparks, particles) kept
+ * together in one object. A movie clip per sprite costs an animation
+ * swapper, a table and an animation each; a sprite in a batch costs a
+ * slot in each of a few arrays of numbers, and the whole batch is moved
+ * on in one loop over them.
+ *
+ * A batch is added to the display list like a movie clip and is drawn
+ * where it is on its layer, its sprites in the order they are stored.
+ * The batch's x and y are added to every sprite's position (its own
+ * rotation and scale are not used). Each sprite is drawn centered on
+ * its position, scaled by its scale and rotated by its rotation.
+ *
+ * The arrays are public so the game can change sprites directly, e.g.
+ * batch.vx[i] = 2. They are replaced by bigger ones when the batch
+ * grows, so do not keep them across adds. Sprite i is valid for
+ * i below size(). Removing a sprite moves the last one into its
+ * place, so numbers of other sprites can change.
+ *
+ * Every tick the model calls advanceFrame, which adds each sprite's
+ * velocity to its position and moves it on to its next frame. Hit tests
+ * against a batch use the rectangle around all of its sprites.
+ * @author Nick Cheng
+ */
+public class SpriteBatch extends MovieClip {
+    /** Sprite flag: stop on the last frame instead of looping */
+    public static final byte STOP_AT_END = 1;
+    /** Sprite flag: remove the sprite after its last frame */
+    public static final byte REMOVE_AT_END = 2;
+
+    /** Position of each sprite's center, relative to the batch */
+    public float[] spriteX;
+    public float[] spriteY;
+    /** Added to each sprite's position every tick */
+    public float[] vx;
+    public float[] vy;
+    /** Rotation in radians */
+    public float[] spriteRotation;
+    /** Scale, 1 = normal */
+    public float[] spriteScale;
+    /** Current frame number of each sprite's animation */
+    public int[] frame;
+    /** Each sprite's animation, as given by addAnimation */
+    public int[] anim;
+    /** STOP_AT_END and REMOVE_AT_END, or 0 to loop */
+    public byte[] flags;
+
+    private int count;
+    private final List<Animation> animations = new ArrayList<Animation>();
+    /**
+     * frames in each animation and their size, updated every tick
+     * until they have loaded in the background
+     */
+    private boolean[] loaded = new boolean[4];
+    private int[] frameCounts = new int[4];
+    private int[] frameWidths = new int[4];
+    private int[] frameHeights = new int[4];
+    private boolean paused;
+    private byte defaultFlags;
+
+    /** the rectangle around all sprites, relative to the batch, found every tick */
+    private int left;
+    private int top;
+    private int width;
+    private int height;
+
+    /** An empty batch */
+    public SpriteBatch() {
+        this(64);
+    }
+
+    /**
+     * @param capacity Number of sprites to make room for
+     */
+    public SpriteBatch(int capacity) {
+        super();
+        setCapacity(Math.max(capacity, 1));
+    }
+
+    private void setCapacity(int n) {
+        spriteX = copyOf(spriteX, n);
+        spriteY = copyOf(spriteY, n);
+        vx = copyOf(vx, n);
+        vy = copyOf(vy, n);
+        spriteRotation = copyOf(spriteRotation, n);
+        spriteScale = copyOf(spriteScale, n);
+        frame = frame == null ? new int[n] : Arrays.copyOf(frame, n);
+        anim = anim == null ? new int[n] : Arrays.copyOf(anim, n);
+        flags = flags == null ? new byte[n] : Arrays.copyOf(flags, n);
+    }
+
+    private static float[] copyOf(float[] a, int n) {
+        return a == null ? new float[n] : Arrays.copyOf(a, n);
+    }
+
+    /**
+     * Loads an animation for the sprites of this batch to use
+     * @param path Path to a folder of frames or a single image
+     * @return The number to give add for this animation
+     */
+    public int addAnimation(String path) {
+        animations.add(new Animation(new File(path)));
+        if (animations.size() > frameCounts.length) {
+            loaded = Arrays.copyOf(loaded, frameCounts.length * 2);
+            frameCounts = Arrays.copyOf(frameCounts, frameCounts.length * 2);
+            frameWidths = Arrays.copyOf(frameWidths, frameCounts.length);
+            frameHeights = Arrays.copyOf(frameHeights, frameCounts.length);
+        }
+        readAnimation(animations.size() - 1);
+        return animations.size() - 1;
+    }
+
+    private void readAnimation(int a) {
+        Animation animation = animations.get(a);
+        loaded[a] = animation.isLoaded();
+        frameCounts[a] = animation.getFrameCount();
+        frameWidths[a] = animation.getWidth();
+        frameHeights[a] = animation.getHeight();
+    }
+
+    /**
+     * Adds a sprite, unrotated at normal scale and not moving. Set its
+     * rotation or scale before the next tick, when the rectangle
+     * around the sprites is found again.
+     * @param animation The sprite's animation, from addAnimation
+     * @param x Where its center is, relative to the batch
+     * @param y Where its center is, relative to the batch
+     * @return The sprite's number
+     */
+    public int add(int animation, float x, float y) {
+        if (animation < 0 || animation >= animations.size()) {
+            throw new IllegalArgumentException("No animation " + animation + " in this batch");
+        }
+        if (count == frame.length) setCapacity(count * 2);
+        int i = count++;
+        spriteX[i] = x;
+        spriteY[i] = y;
+        vx[i] = 0;
+        vy[i] = 0;
+        spriteRotation[i] = 0;
+        spriteScale[i] = 1;
+        frame[i] = 0;
+        anim[i] = animation;
+        flags[i] = defaultFlags;
+        include(i);
+        return i;
+    }
+
+    /**
+     * Removes a sprite. The last sprite takes its number.
+     * @param i The sprite's number
+     */
+    public void remove(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("Sprite: " + i + ", Size: " + count);
+        }
+        int last = --count;
+        spriteX[i] = spriteX[last];
+        spriteY[i] = spriteY[last];
+        vx[i] = vx[last];
+        vy[i] = vy[last];
+        spriteRotation[i] = spriteRotation[last];
+        spriteScale[i] = spriteScale[last];
+        frame[i] = frame[last];
+        anim[i] = anim[last];
+        flags[i] = flags[last];
+    }
+
+    /** Removes every sprite */
+    public void clear() {
+        count = 0;
+    }
+
+    /** @return Number of sprites */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * The frame sprite i is showing
+     * @param i The sprite's number
+     * @return The frame
+     */
+    public SpriteFrame getFrame(int i) {
+        return animations.get(anim[i]).getSpriteFrame(frame[i]);
+    }
+
+    /**
+     * Moves every sprite by its velocity and on to its next frame,
+     * removing the ones that finished with REMOVE_AT_END. Sprites whose
+     * animation is still loading stay on their first frame and do not
+     * end. Called by the model every tick, see Model.advanceAnimations.
+     */
+    @Override
+    public void advanceFrame() {
+        for (int a = 0; a < animations.size(); a++) {
+            if (!loaded[a]) readAnimation(a);
+        }
+        int step = paused ? 0 : 1;
+        //backwards, so a removed sprite is replaced by one already done
+        for (int i = count - 1; i >= 0; i--) {
+            spriteX[i] += vx[i];
+            spriteY[i] += vy[i];
+            if (!loaded[anim[i]]) continue;
+            int f = frame[i] + step;
+            if (f >= frameCounts[anim[i]]) {
+                if ((flags[i] & REMOVE_AT_END) != 0) {
+                    remove(i);
+                    continue;
+                }
+                f = (flags[i] & STOP_AT_END) != 0 ? f - 1 : 0;
+            }
+            frame[i] = f;
+        }
+        findBounds();
+    }
+
+    /**
+     * Finds the rectangle around all the sprites
+     */
+    private void findBounds() {
+        left = top = width = height = 0;
+        for (int i = 0; i < count; i++) {
+            include(i);
+        }
+    }
+
+    /**
+     * Grows the rectangle around the sprites to hold sprite i,
+     * allowing for any rotation
+     */
+    private void include(int i) {
+        int w = frameWidths[anim[i]];
+        int h = frameHeights[anim[i]];
+        float s = Math.abs(spriteScale[i]);
+        float rx;
+        float ry;
+        if (spriteRotation[i] == 0) {
+            rx = w * s / 2;
+            ry = h * s / 2;
+        } else {
+            rx = ry = (float) Math.sqrt(w * w + h * h) * s / 2;
+        }
+        int l = (int) Math.floor(spriteX[i] - rx) - 2;
+        int t = (int) Math.floor(spriteY[i] - ry) - 2;
+        int r = (int) Math.ceil(spriteX[i] + rx) + 2;
+        int b = (int) Math.ceil(spriteY[i] + ry) + 2;
+        if (width == 0 && height == 0) {
+            left = l;
+            top = t;
+            width = r - l;
+            height = b - t;
+            return;
+        }
+        int right = Math.max(left + width, r);
+        int bottom = Math.max(top + height, b);
+        left = Math.min(left, l);
+        top = Math.min(top, t);
+        width = right - left;
+        height = bottom - top;
+    }
+
+    /**
+     * Sprites added from now on will stop on their last frame
+     */
+    @Override
+    public void stopAtEnd() {
+        defaultFlags = STOP_AT_END;
+    }
+
+    /**
+     * Sprites added from now on will be removed after their last frame
+     */
+    @Override
+    public void removeAtEnd() {
+        defaultFlags = REMOVE_AT_END;
+    }
+
+    /** Starts every sprite's animation again */
+    @Override
+    public void play() {
+        paused = false;
+    }
+
+    /** Stops every sprite's animation. They still move. */
+    @Override
+    public void stop() {
+        paused = true;
+    }
+
+    @Override
+    public void setDirection(Direction dir) {
+        paused = dir == Direction.PAUSED;
+    }
+
+    /** Sets every sprite to a frame */
+    @Override
+    public void setFrame(int n) {
+        Arrays.fill(frame, 0, count, n);
+    }
+
+    @Override
+    public void gotoAndPlay(int n) {
+        setFrame(n);
+        play();
+    }
+
+    @Override
+    public void gotoAndStop(int n) {
+        setFrame(n);
+        stop();
+    }
+
+    /** A batch has no animations to swap, so this does nothing */
+    @Override
+    public void swapAndRestart(String name) {
+    }
+
+    /** A batch has no animations to swap, so this does nothing */
+    @Override
+    public void swapAndResume(String name) {
+    }
+
+    @Override
+    public String getCurrentAnim() {
+        return null;
+    }
+
+    /** @return false, sprites end one by one */
+    @Override
+    public boolean isAtEnd() {
+        return false;
+    }
+
+    /** @return null, each sprite has its own frame (see getFrame) */
+    @Override
+    public SpriteFrame getCurrentSpriteFrame() {
+        return null;
+    }
+
+    /**
+     * Moves the sprites on, as advanceFrame does
+     * @return null, each sprite has its own frame (see getFrame)
+     */
+    @Override
+    public SpriteFrame getNextSpriteFrame() {
+        advanceFrame();
+        return null;
+    }
+
+    /**
+     * Moves the sprites on, as advanceFrame does
+     * @return null, each sprite has its own frame (see getFrame)
+     */
+    @Override
+    public BufferedImage getNextFrame() {
+        advanceFrame();
+        return null;
+    }
+
+    /**
+     * Empties the batch and puts its position and settings back to
+     * how the constructor made them. Its animations stay loaded.
+     */
+    @Override
+    void reset() {
+        x = 0;
+        y = 0;
+        prevX = 0;
+        prevY = 0;
+        hasPrev = false;
+        zIndex = 0;
+        count = 0;
+        paused = false;
+        defaultFlags = 0;
+        left = top = width = height = 0;
+    }
+
+    /** @return Size of the rectangle around all the sprites */
+    @Override
+    public Point getDimensions() {
+        return new Point(width, height);
+    }
+
+    /** @return Width of the rectangle around all the sprites */
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    /** @return Height of the rectangle around all the sprites */
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getLeft() {
+        return x + left;
+    }
+
+    @Override
+    public int getTop() {
+        return y + top;
+    }
+
+    /** @return false, the sprites are transformed one by one */
+    @Override
+    public boolean isTransformed() {
+        return false;
+    }
+}
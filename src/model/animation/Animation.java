@@ -3,13 +3,8 @@ package model.animation;
 import java.awt.Point;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-
-import javax.imageio.ImageIO;
 
 import model.Constants;
 
@@ -17,23 +12,38 @@ import model.Constants;
  * The Animation class is very helpful for iterating through
  * a sequence of frames that describe an animation. You can simply
  * pass in a directory path and it will load up all of the images
- * sequentially and prepare them for playback.
+ * sequentially and prepare them for playback. The images are
+ * converted to the screen's format as they are loaded (see ImageLoader),
+ * then packed onto the shared texture atlas, so each frame is a
+ * rectangle on a sheet. The loading itself is done by AssetLoader.
  * @author Nick Cheng
  */
 public class Animation implements IteratingAnimation {
     /**
-     * This hashtable contains all of the loaded animations for the game.
+     * This cache contains the loaded animations for the game.
      * The purpose of storing them is so that if an movie clip is created multiple
      * times with the same animation, the first one will be loaded from disk,
-     * but all subsequent movie clips will lookup the animation from this table.
-     * 
-     * Specifically, this hashtable uses relative path as the key, and
-     * the sequence of images as values.
+     * but all subsequent movie clips will lookup the animation from the cache.
+     * It uses relative path as the key, and drops animations that are no
+     * longer used when it takes more than Constants.ANIMATION_CACHE_BYTES.
      */
-    public static Map<String,List<BufferedImage>> loadedAnimations;
+    public static AnimationCache cache;
+    
+    /** The sheets that all loaded frames are packed onto */
+    public static TextureAtlas atlas;
     
-    /**The list of frames stored as buffered images */
-    List<BufferedImage> images;
+    /** Reads animations that are not loaded yet */
+    public static AssetLoader loader;
+    
+    /** Shown while an animation is still loading */
+    private static final List<SpriteFrame> PLACEHOLDER = Collections.singletonList(
+            new SpriteFrame(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE)));
+    
+    /**The list of frames, as rectangles on the atlas */
+    List<SpriteFrame> images;
+    private String path;
+    /** the loading of this animation's frames, until they are ready */
+    private AssetLoader.Job pending;
     public int currentFrame = 0;
     private Direction dir = Direction.FORWARD;
     private Point dimensions;
@@ -44,45 +54,47 @@ public class Animation implements IteratingAnimation {
      * Constructor that takes in the path of a directory (or individual image) and will load
      * the animations into a list for easy playback. Make sure that the
      * images inside the folder are in order alphabetically.
+     * 
+     * With Constants.ASYNC_LOADING on, an animation that is not loaded
+     * yet is read in the background and shows an empty frame until it
+     * is ready (see AssetLoader).
      * @param folder A File object that represents the folder which contains
      * the animation pictures, or individual image
      */
     public Animation(File folder) {
-        String path = folder.getPath();
-        if(loadedAnimations.containsKey(path)){
-            images = loadedAnimations.get(path);
-        }else{
-            images = new ArrayList<BufferedImage>();
-            
-            try {
-                if (folder.isDirectory()){
-                    if(Constants.DEBUG) System.out.println("Reading dir: "+path);
-                    File[] folderContents = folder.listFiles();
-                    Arrays.sort(folderContents); //some platforms don't auto-sort (e.g. Ubuntu)
-                    for (final File fileEntry : folderContents) {
-                        if (fileEntry.isDirectory()){
-                            System.err.println("Expecting image but got directory when reading:\n"
-                                    + fileEntry.getPath() 
-                                    +"\nDid you forget to use the MovieClip(path, true)"
-                                    + "\nconstructor to specify that it has subfolders?\n");
-                            System.exit(-1);
-                            
-                        }
-                        images.add(ImageIO.read(fileEntry));
-                    }
-                }else{
-                    //folder is actually a file, just read it
-                    if(Constants.DEBUG) System.out.println("Reading image: "+path);
-                    images.add(ImageIO.read(folder));
-                }
-            } catch (IOException e) {
-                System.err.println("Error Reading image: "+path);
-                System.exit(-1);
+        path = folder.getPath();
+        images = cache.acquire(this, path);
+        if(images == null){
+            pending = loader.load(path, this);
+            if(!Constants.ASYNC_LOADING){
+                pending.await();
             }
-            loadedAnimations.put(path, images);
+            images = PLACEHOLDER;
+            checkLoaded();
         }
         //read dimensions of animation from first image in sequence
-        dimensions = new Point(images.get(0).getWidth(),images.get(0).getHeight());
+        dimensions = new Point(images.get(0).width,images.get(0).height);
+    }
+    
+    /**
+     * Switches from the placeholder to the real frames once they have loaded
+     * @return Whether the frames are ready
+     */
+    private boolean checkLoaded(){
+        if(pending == null) return true;
+        if(!pending.isDone()) return false;
+        
+        List<SpriteFrame> loaded = pending.getFrames();
+        if(loaded == null){
+            System.err.println(pending.getError());
+            System.exit(-1);
+        }
+        pending = null;
+        //already pinned for this animation by the loader
+        images = loaded;
+        dimensions = new Point(images.get(0).width,images.get(0).height);
+        setFrame(currentFrame);
+        return true;
     }
 
     /**
@@ -104,6 +116,16 @@ public class Animation implements IteratingAnimation {
      */
     @Override
     public BufferedImage getNextFrame() {
+        return getNextSpriteFrame().getImage();
+    }
+    
+    /**
+     * Same as getNextFrame, but gives the frame's place on its sheet
+     * @return The next frame
+     */
+    @Override
+    public SpriteFrame getNextSpriteFrame() {
+        if (!checkLoaded()) return images.get(0);
         currentFrame = ((currentFrame+dir.speed) + images.size())% images.size();
         return images.get(currentFrame);
     }
@@ -114,6 +136,10 @@ public class Animation implements IteratingAnimation {
      */
     @Override
     public void setFrame(int n) {
+        if (pending != null){
+            currentFrame = n;
+            return;
+        }
         currentFrame =  (n + images.size())% images.size();
     }
 
@@ -136,15 +162,70 @@ public class Animation implements IteratingAnimation {
      * @return a Point of width,height
      */
     public Point getDimensions(){
+        checkLoaded();
         return dimensions;
     }
     
+    /**
+     * Width of the frames, the same as getDimensions().x
+     * @return The width in pixels
+     */
+    public int getWidth(){
+        checkLoaded();
+        return dimensions.x;
+    }
+    
+    /**
+     * Height of the frames, the same as getDimensions().y
+     * @return The height in pixels
+     */
+    public int getHeight(){
+        checkLoaded();
+        return dimensions.y;
+    }
+    
+    /**
+     * The frame last given by getNextFrame, without moving on
+     * @return The current frame
+     */
+    public SpriteFrame getCurrentSpriteFrame(){
+        if (!checkLoaded()) return images.get(0);
+        return images.get(currentFrame);
+    }
+    
+    /**
+     * @return Whether the frames have loaded. Until then the animation
+     *      shows one empty frame (see Constants.ASYNC_LOADING).
+     */
+    public boolean isLoaded(){
+        return checkLoaded();
+    }
+    
+    /**
+     * @return Number of frames, 1 while the animation is loading
+     */
+    public int getFrameCount(){
+        checkLoaded();
+        return images.size();
+    }
+    
+    /**
+     * A frame of the animation, without changing the current frame
+     * @param n The frame number, wrapped around if out of range
+     * @return The frame
+     */
+    public SpriteFrame getSpriteFrame(int n){
+        checkLoaded();
+        return images.get((n % images.size() + images.size()) % images.size());
+    }
+    
     /**
      * Is this animation at the last frame?
      * @return Whether it is at the last frame
      */
     @Override
     public boolean isAtEnd(){
+        if (!checkLoaded()) return false;
         return currentFrame == images.size()-1;
     }
 }
@@ -0,0 +1,272 @@
+package model.animation;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the frames of loaded animations so that making another movie
+ * clip with the same animation does not read it from disk again.
+ *
+ * The cache counts the memory its frames take (4 bytes a pixel) and
+ * keeps it under a limit by dropping the least recently used
+ * animations. An animation in use is never dropped: every Animation
+ * object pins the frames it plays, and the pin is let go once the
+ * Animation is garbage collected (i.e. once no movie clip uses it).
+ * So the limit can be exceeded while that many frames are in use.
+ *
+ * Dropped frames are handed back to the texture atlas, which reuses
+ * their space and frees a sheet once nothing on it is left.
+ * @author Nick Cheng
+ */
+public class AnimationCache {
+
+    private static class Entry {
+        final List<SpriteFrame> frames;
+        final long bytes;
+        int pins;
+
+        Entry(List<SpriteFrame> frames) {
+            this.frames = frames;
+            long b = 0;
+            for (SpriteFrame f : frames) {
+                b += (long) f.width * f.height * 4;
+            }
+            bytes = b;
+        }
+    }
+
+    /** Lets go of an animation's frames once the Animation is collected */
+    private static class Pin extends WeakReference<Animation> {
+        final Entry entry;
+
+        Pin(Animation anim, Entry entry, ReferenceQueue<Animation> queue) {
+            super(anim, queue);
+            this.entry = entry;
+        }
+    }
+
+    private final TextureAtlas atlas;
+    private long maxBytes;
+    private long bytes;
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final ReferenceQueue<Animation> collected = new ReferenceQueue<Animation>();
+    /** the pins themselves have to stay reachable to be queued */
+    private final Set<Pin> pins = new HashSet<Pin>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long evictedBytes;
+
+    /**
+     * @param atlas The atlas the frames are packed on
+     * @param maxBytes Most memory the frames should take, counting 4 bytes a pixel
+     */
+    public AnimationCache(TextureAtlas atlas, long maxBytes) {
+        this.atlas = atlas;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Looks up the frames of an animation and pins them for an
+     * Animation object, if they are loaded.
+     * @param anim The animation that will play the frames
+     * @param path The relative path of the animation
+     * @return The frames, or null if they are not in the cache
+     */
+    public synchronized List<SpriteFrame> acquire(Animation anim, String path) {
+        unpinCollected();
+        Entry e = cache.get(path);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        pin(anim, e);
+        return e.frames;
+    }
+
+    /**
+     * Adds frames that no animation is using yet (i.e. preloaded ones)
+     * @param path The relative path of the animation
+     * @param frames The loaded frames
+     */
+    public synchronized void put(String path, List<SpriteFrame> frames) {
+        put(path, frames, Collections.<Animation>emptyList());
+    }
+
+    /**
+     * Adds frames that were just loaded, pinning them for the animations
+     * that are waiting on them before anything is dropped to make room.
+     * So the new frames cannot be dropped (and given back to the atlas)
+     * before those animations get them.
+     * @param path The relative path of the animation
+     * @param frames The loaded frames
+     * @param users The animations waiting on them
+     * @return The frames in the cache, which are the ones given unless
+     *      the same animation was added in the meantime
+     */
+    synchronized List<SpriteFrame> put(String path, List<SpriteFrame> frames, List<Animation> users) {
+        unpinCollected();
+        Entry e = cache.get(path);
+        if (e == null) {
+            e = add(path, frames);
+        } else if (e.frames != frames) {
+            //loaded twice, keep the copy that is already in use
+            atlas.release(frames);
+        }
+        for (Animation anim : users) {
+            pin(anim, e);
+        }
+        trim();
+        return e.frames;
+    }
+
+    /**
+     * Pins the frames of an animation for an Animation object without
+     * counting a hit or miss
+     * @param anim The animation that will play the frames
+     * @param path The relative path of the animation
+     * @return The frames, or null if they are not in the cache
+     */
+    synchronized List<SpriteFrame> pin(Animation anim, String path) {
+        Entry e = cache.get(path);
+        if (e == null) return null;
+        pin(anim, e);
+        return e.frames;
+    }
+
+    /**
+     * Looks up the frames of an animation without pinning them or
+     * counting a hit or miss
+     * @param path The relative path of the animation
+     * @return The frames, or null if they are not in the cache
+     */
+    public synchronized List<SpriteFrame> peek(String path) {
+        Entry e = cache.get(path);
+        return e == null ? null : e.frames;
+    }
+
+    private Entry add(String path, List<SpriteFrame> frames) {
+        Entry e = new Entry(frames);
+        cache.put(path, e);
+        bytes += e.bytes;
+        return e;
+    }
+
+    private void pin(Animation anim, Entry e) {
+        e.pins++;
+        pins.add(new Pin(anim, e, collected));
+    }
+
+    /**
+     * Lets go of the frames of every Animation that has been collected
+     */
+    private void unpinCollected() {
+        boolean any = false;
+        Reference<? extends Animation> ref;
+        while ((ref = collected.poll()) != null) {
+            Pin pin = (Pin) ref;
+            pins.remove(pin);
+            pin.entry.pins--;
+            any = true;
+        }
+        if (any) trim();
+    }
+
+    /**
+     * Drops the least recently used animations that are not pinned
+     * until the cache fits its limit
+     */
+    private void trim() {
+        if (bytes <= maxBytes) return;
+        Iterator<Map.Entry<String, Entry>> it = cache.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Entry e = it.next().getValue();
+            if (e.pins > 0) continue;
+            it.remove();
+            bytes -= e.bytes;
+            evictions++;
+            evictedBytes += atlas.release(e.frames);
+        }
+    }
+
+    /**
+     * Changes the memory limit, dropping animations if it is now exceeded
+     * @param maxBytes Most memory the frames should take, counting 4 bytes a pixel
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        unpinCollected();
+        trim();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /** @return Memory taken by the cached frames, counting 4 bytes a pixel */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /** @return Number of animations in the cache */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /** @return Number of animations in use by at least one Animation */
+    public synchronized int getPinnedCount() {
+        unpinCollected();
+        int n = 0;
+        for (Entry e : cache.values()) {
+            if (e.pins > 0) n++;
+        }
+        return n;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return Memory actually freed by dropping animations, counting 4
+     *      bytes a pixel: the atlas sheets let go of, and frames that
+     *      were images of their own. Space freed on a sheet that is still
+     *      in use is not counted, it is reused for new frames instead.
+     */
+    public synchronized long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    /**
+     * @return Fraction of lookups that found the animation loaded, 0 if there were none
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public synchronized void resetStats() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+        evictedBytes = 0;
+    }
+}
@@ -30,6 +30,8 @@ public class AnimationSwapper implements IteratingAnimation {
     Direction dir = Direction.FORWARD;
     Animation currentAnim;
     public String currentAnimName;
+    /** the animation that was current to begin with */
+    private String firstAnimName;
 
 
     /**
@@ -63,13 +65,14 @@ public class AnimationSwapper implements IteratingAnimation {
         boolean didFirst = false;
         
         try {
-            for (final File fileEntry : folder.listFiles()) {
-                String name = fileEntry.getName();
-                Animation an = new Animation(fileEntry);
+            //from the sprite pack if it has this folder
+            for (final String name : Animation.loader.list(dirpath)) {
+                Animation an = new Animation(new File(folder, name));
                 animationSet.put(name, an);
                 if(!didFirst){
                     currentAnim = an;
                     currentAnimName = name;
+                    firstAnimName = name;
                     didFirst = true;
                 }
             }
@@ -92,8 +95,22 @@ public class AnimationSwapper implements IteratingAnimation {
         if(animationSet.size() == 1){
             currentAnim = newAnim;
             currentAnimName = name;
+            firstAnimName = name;
         }
     }
+    
+    /**
+     * Goes back to the first animation, with every animation at
+     * its first frame, playing forward
+     */
+    public void reset(){
+        for (Animation an : animationSet.values()){
+            an.setFrame(0);
+        }
+        currentAnim = animationSet.get(firstAnimName);
+        currentAnimName = firstAnimName;
+        setDirection(Direction.FORWARD);
+    }
 
     /**
      * Sets the direction of the animations. Follows the same rules
@@ -137,6 +154,15 @@ public class AnimationSwapper implements IteratingAnimation {
         return currentAnim.getNextFrame();
     }
     
+    /**
+     * Same as getNextFrame, but gives the frame's place on its sheet
+     * @return The next frame of the current animation
+     */
+    @Override
+    public SpriteFrame getNextSpriteFrame() {
+        return currentAnim.getNextSpriteFrame();
+    }
+    
     /**
      * This will change the current frame to the one given
      * @param n The frame to switch to
@@ -154,6 +180,30 @@ public class AnimationSwapper implements IteratingAnimation {
         return currentAnim.getDimensions();
     }
     
+    /**
+     * Width of the current animation
+     * @return The width in pixels
+     */
+    public int getWidth(){
+        return currentAnim.getWidth();
+    }
+    
+    /**
+     * Height of the current animation
+     * @return The height in pixels
+     */
+    public int getHeight(){
+        return currentAnim.getHeight();
+    }
+    
+    /**
+     * The frame last given by getNextFrame, without moving on
+     * @return The current frame of the current animation
+     */
+    public SpriteFrame getCurrentSpriteFrame(){
+        return currentAnim.getCurrentSpriteFrame();
+    }
+    
     /**
      * Is this animation at the last frame?
      * @return Whether it is at the last frame
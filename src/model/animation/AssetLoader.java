@@ -0,0 +1,404 @@
+package model.animation;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.Constants;
+
+/**
+ * Reads animations from disk on a pool of background threads. Every image
+ * in a folder is decoded as a task of its own, so a folder of frames is
+ * read in parallel, and once the last one is done they are all packed onto
+ * the texture atlas together.
+ *
+ * Animations in the sprite pack (see setPack) are read from it instead,
+ * without decoding any image files.
+ *
+ * Loaded frames go into the AnimationCache. A path that is already
+ * loading is not loaded again: asking for it gives back the same job. Games can call preload (or
+ * preloadManifest) at startup with every animation they will need later,
+ * so that creating those movie clips in the middle of the game never
+ * touches the disk.
+ * @author Nick Cheng
+ */
+public class AssetLoader {
+
+    /**
+     * The loading of one animation folder (or single image)
+     */
+    public static class Job {
+        public final String path;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile List<SpriteFrame> frames;
+        private volatile String error;
+
+        /** animations waiting on the frames, guarded by the cache's lock */
+        private final List<Animation> users = new ArrayList<Animation>();
+        /** decoded images, in the order of the files */
+        private BufferedImage[] images;
+        private AtomicInteger remaining;
+
+        Job(String path) {
+            this.path = path;
+        }
+
+        /** @return Whether the frames are ready, or loading failed */
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /** @return The frames, or null if not loaded (yet) */
+        public List<SpriteFrame> getFrames() {
+            return frames;
+        }
+
+        /** @return Why loading failed, or null if it did not */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Waits for the job to finish
+         * @return The frames, or null if loading failed
+         */
+        public List<SpriteFrame> await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            return frames;
+        }
+
+        void finish(List<SpriteFrame> frames, String error) {
+            this.frames = frames;
+            this.error = error;
+            images = null;
+            done.countDown();
+        }
+    }
+
+    /** How long a loading thread waits for more work before it ends */
+    private static final long IDLE_SECONDS = 5;
+
+    private final TextureAtlas atlas;
+    private final AnimationCache cache;
+    private final ExecutorService pool;
+    private volatile SpritePack pack;
+    /** animations that are still loading */
+    private final ConcurrentHashMap<String, Job> jobs = new ConcurrentHashMap<String, Job>();
+
+    /**
+     * @param atlas The atlas to pack loaded frames onto
+     * @param cache The cache to put loaded frames in
+     * @param threads Number of decoding threads
+     */
+    public AssetLoader(TextureAtlas atlas, AnimationCache cache, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.atlas = atlas;
+        this.cache = cache;
+        final AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Asset Loader " + count.incrementAndGet());
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            }
+        });
+        //nothing to load most of the time, so do not keep threads around for it
+        executor.allowCoreThreadTimeOut(true);
+        pool = executor;
+    }
+
+    /**
+     * Starts loading an animation folder (or single image), unless
+     * it is already loading or in the cache.
+     * @param path The relative path of the folder or image
+     * @return The job loading it, which is already done if the
+     *      animation was in the cache
+     */
+    public Job load(String path) {
+        return load(path, null);
+    }
+
+    /**
+     * Starts loading an animation for an Animation object. Its frames
+     * are pinned for it as soon as they reach the cache, so they are
+     * never dropped before it gets them.
+     * @param path The relative path of the folder or image
+     * @param user The animation that will play the frames, or null
+     * @return The job loading it
+     */
+    Job load(String path, Animation user) {
+        path = new File(path).getPath();
+        final Job created;
+        //finished jobs move from jobs to the cache while holding this lock
+        synchronized (cache) {
+            Job job = jobs.get(path);
+            if (job != null) {
+                if (user != null) job.users.add(user);
+                return job;
+            }
+            created = new Job(path);
+            List<SpriteFrame> frames = user == null ? cache.peek(path) : cache.pin(user, path);
+            if (frames != null) {
+                created.finish(frames, null);
+                return created;
+            }
+            if (user != null) created.users.add(user);
+            jobs.put(path, created);
+        }
+
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean started = false;
+                try {
+                    start(created);
+                    started = true;
+                } finally {
+                    //whatever went wrong, nothing should wait on the job forever
+                    if (!started) complete(created, null, "Error Reading image: " + created.path);
+                }
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Starts loading a number of animations
+     * @param paths The relative paths of the folders or images
+     */
+    public void preload(String... paths) {
+        for (String path : paths) {
+            load(path);
+        }
+    }
+
+    /**
+     * Starts loading every animation listed in a manifest: a text file
+     * with one path per line. Blank lines and lines starting with #
+     * are skipped.
+     * @param manifest The manifest file
+     * @throws IOException If the manifest cannot be read
+     */
+    public void preloadManifest(File manifest) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(manifest));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                load(line);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Waits until everything that is loading has loaded
+     * @return Whether all of it loaded without errors
+     */
+    public boolean awaitAll() {
+        boolean ok = true;
+        for (Job job : jobs.values()) {
+            ok &= job.await() != null;
+        }
+        return ok;
+    }
+
+    /**
+     * @return Number of animations that have been asked for but are not ready
+     */
+    public int getPendingCount() {
+        int n = 0;
+        for (Job job : jobs.values()) {
+            if (!job.isDone()) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Reads animations from a sprite pack when it has them, instead
+     * of from their folders
+     * @param pack The pack, or null to always read folders
+     */
+    public void setPack(SpritePack pack) {
+        this.pack = pack;
+    }
+
+    public SpritePack getPack() {
+        return pack;
+    }
+
+    /**
+     * Lists the animations in a folder, from the sprite pack if it has
+     * them or else from the disk
+     * @param path The relative path of a folder
+     * @return The names of the animations (sub-folders and images) in
+     *      it, or null if it is not a folder
+     */
+    public String[] list(String path) {
+        SpritePack p = pack;
+        String[] names = p == null ? null : p.list(path);
+        return names != null ? names : new File(path).list();
+    }
+
+    /**
+     * Stops the loading threads. Jobs that have not finished never will.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Lists the files of a job and hands each one to a decoding task
+     */
+    private void start(final Job job) {
+        SpritePack p = pack;
+        if (p != null && p.contains(job.path)) {
+            readPack(p, job);
+            return;
+        }
+        File folder = new File(job.path);
+        File[] files;
+        if (folder.isDirectory()) {
+            if (Constants.DEBUG) System.out.println("Reading dir: " + job.path);
+            files = folder.listFiles();
+            if (files == null) {
+                complete(job, null, "Error Reading image: " + job.path);
+                return;
+            }
+            Arrays.sort(files); //some platforms don't auto-sort (e.g. Ubuntu)
+            for (File f : files) {
+                if (f.isDirectory()) {
+                    complete(job, null, "Expecting image but got directory when reading:\n"
+                            + f.getPath()
+                            + "\nDid you forget to use the MovieClip(path, true)"
+                            + "\nconstructor to specify that it has subfolders?\n");
+                    return;
+                }
+            }
+        } else {
+            //folder is actually a file, just read it
+            if (Constants.DEBUG) System.out.println("Reading image: " + job.path);
+            files = new File[] {folder};
+        }
+        if (files.length == 0) {
+            complete(job, null, "No images in: " + job.path);
+            return;
+        }
+
+        job.images = new BufferedImage[files.length];
+        job.remaining = new AtomicInteger(files.length);
+        for (int i = 0; i < files.length; i++) {
+            final int index = i;
+            final File file = files[i];
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    decode(job, index, file);
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads all the frames of a job from a sprite pack. They are already
+     * decoded, so this is quick enough not to split up.
+     */
+    private void readPack(SpritePack p, Job job) {
+        if (Constants.DEBUG) System.out.println("Reading pack: " + job.path);
+        try {
+            List<BufferedImage> images = p.read(job.path);
+            for (int i = 0; i < images.size(); i++) {
+                images.set(i, ImageLoader.toCompatibleImage(images.get(i)));
+            }
+            complete(job, atlas.addAll(images), null);
+        } catch (IOException e) {
+            complete(job, null, "Error Reading image: " + job.path + " from " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads one frame of a job. The last frame to finish packs them all,
+     * even if reading this one threw.
+     */
+    private void decode(Job job, int index, File file) {
+        BufferedImage[] images = job.images;
+        if (images == null) return; //the job has already failed
+        try {
+            images[index] = ImageLoader.read(file);
+        } catch (IOException e) {
+            job.error = "Error Reading image: " + file.getPath();
+        } catch (RuntimeException e) {
+            job.error = "Error Reading image: " + file.getPath() + " (" + e + ")";
+        } finally {
+            if (images[index] == null && job.error == null) {
+                job.error = "Error Reading image: " + file.getPath();
+            }
+            if (job.remaining.decrementAndGet() == 0) pack(job, images);
+        }
+    }
+
+    /**
+     * Packs the decoded frames of a job onto the atlas and completes it
+     */
+    private void pack(Job job, BufferedImage[] images) {
+        if (job.error != null) {
+            complete(job, null, job.error);
+            return;
+        }
+        try {
+            complete(job, atlas.addAll(Arrays.asList(images)), null);
+        } catch (RuntimeException e) {
+            complete(job, null, "Error Reading image: " + job.path + " (" + e + ")");
+        }
+    }
+
+    /**
+     * Makes the hit masks of a finished job's frames, moves them into
+     * the cache, pinned for the animations waiting on them, and lets
+     * them know. A job that has already completed is left alone.
+     */
+    private void complete(Job job, List<SpriteFrame> frames, String error) {
+        if (frames != null) {
+            for (SpriteFrame f : frames) {
+                f.getMask();
+            }
+        }
+        synchronized (cache) {
+            //a failing job can get here from more than one task
+            if (jobs.get(job.path) != job) return;
+            if (frames != null) frames = cache.put(job.path, frames, job.users);
+            job.users.clear();
+            jobs.remove(job.path);
+        }
+        job.finish(frames, error);
+    }
+}
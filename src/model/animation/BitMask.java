@@ -0,0 +1,129 @@
+package model.animation;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Which pixels of a frame are solid, one bit per pixel, packed 64 to a
+ * long. Each row starts on a new long, and bit i of a word is pixel
+ * (word * 64 + i) of the row. Two masks are checked for overlap a
+ * word at a time, so comparing two 64 pixel wide sprites is one AND
+ * per row.
+ * @author Nick Cheng
+ */
+public class BitMask {
+    public final int width;
+    public final int height;
+    /** longs per row */
+    private final int words;
+    private final long[] bits;
+
+    private BitMask(int width, int height) {
+        this.width = width;
+        this.height = height;
+        words = (width + 63) >>> 6;
+        bits = new long[words * height];
+    }
+
+    /**
+     * Makes the mask of part of an image
+     * @param image The image
+     * @param x Left edge of the part
+     * @param y Top edge of the part
+     * @param w Width of the part
+     * @param h Height of the part
+     * @param alpha Pixels with at least this alpha (0-255) are solid
+     * @return The mask
+     */
+    public static BitMask of(BufferedImage image, int x, int y, int w, int h, int alpha) {
+        BitMask m = new BitMask(w, h);
+        int[] row = new int[w];
+        for (int j = 0; j < h; j++) {
+            image.getRGB(x, y + j, w, 1, row, 0, w);
+            int start = j * m.words;
+            for (int i = 0; i < w; i++) {
+                if (row[i] >>> 24 >= alpha) {
+                    m.bits[start + (i >>> 6)] |= 1L << (i & 63);
+                }
+            }
+        }
+        return m;
+    }
+
+    /**
+     * @return Whether the pixel at x,y is solid. False outside the mask.
+     */
+    public boolean get(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) return false;
+        return (bits[y * words + (x >>> 6)] >>> (x & 63) & 1) != 0;
+    }
+
+    /**
+     * Makes a scaled copy, picking the nearest pixel
+     * @param w The new width
+     * @param h The new height
+     * @return The scaled mask, or this mask if the size is the same
+     */
+    public BitMask scale(int w, int h) {
+        if (w == width && h == height) return this;
+        BitMask m = new BitMask(Math.max(w, 0), Math.max(h, 0));
+        for (int j = 0; j < m.height; j++) {
+            int sy = (int) ((long) j * height / m.height);
+            int start = j * m.words;
+            for (int i = 0; i < m.width; i++) {
+                if (get((int) ((long) i * width / m.width), sy)) {
+                    m.bits[start + (i >>> 6)] |= 1L << (i & 63);
+                }
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Checks whether this mask and another share a solid pixel
+     * @param o The other mask
+     * @param dx Where the other mask's left edge is, relative to this one's
+     * @param dy Where the other mask's top edge is, relative to this one's
+     * @return Whether they overlap
+     */
+    public boolean overlaps(BitMask o, int dx, int dy) {
+        int x0 = Math.max(0, dx);
+        int x1 = Math.min(width, dx + o.width);
+        int y0 = Math.max(0, dy);
+        int y1 = Math.min(height, dy + o.height);
+        if (x0 >= x1 || y0 >= y1) return false;
+        for (int y = y0; y < y1; y++) {
+            int row = y * words;
+            int orow = (y - dy) * o.words;
+            for (int x = x0; x < x1; x += 64) {
+                long a = wordAt(bits, row, words, x);
+                long b = wordAt(o.bits, orow, o.words, x - dx);
+                int n = x1 - x;
+                if (n < 64) a &= (1L << n) - 1;
+                if ((a & b) != 0) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The 64 bits of a row starting at a bit, with zeros past the row's end
+     */
+    private static long wordAt(long[] bits, int row, int words, int bit) {
+        int k = bit >>> 6;
+        int s = bit & 63;
+        long w = bits[row + k] >>> s;
+        if (s != 0 && k + 1 < words) {
+            w |= bits[row + k + 1] << (64 - s);
+        }
+        return w;
+    }
+
+    /** @return Number of solid pixels */
+    public int count() {
+        int n = 0;
+        for (long w : bits) {
+            n += Long.bitCount(w);
+        }
+        return n;
+    }
+}
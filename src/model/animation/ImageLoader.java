@@ -0,0 +1,122 @@
+package model.animation;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Reads animation frames and converts them into the format that is
+ * fastest to draw. ImageIO hands back whatever format the file was in
+ * (often 3 or 4 byte BGR), and Java2D has to convert every pixel of those
+ * each time they are drawn. A frame in the screen's own format can be
+ * copied straight across, and kept in video memory by the platform.
+ * 
+ * The transparency of the new image is chosen from the pixels: opaque if
+ * there is no alpha, bitmask if every pixel is either fully see-through or
+ * fully solid, and translucent otherwise. Without a screen (headless) the
+ * frames become TYPE_INT_ARGB_PRE, or TYPE_INT_RGB if they are opaque.
+ * @author Nick Cheng
+ */
+public class ImageLoader {
+    
+    /**
+     * Reads an image file and converts it for drawing.
+     * @param file The image file
+     * @return The image in a display compatible format
+     * @throws IOException If the file cannot be read, or is not an image
+     */
+    public static BufferedImage read(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Not a readable image: "+file.getPath());
+        }
+        return toCompatibleImage(image);
+    }
+    
+    /**
+     * Copies an image into the format that is fastest to draw on the screen.
+     * @param image The image to convert
+     * @return A compatible copy, or image itself if it already is one
+     */
+    public static BufferedImage toCompatibleImage(BufferedImage image) {
+        int transparency = transparencyOf(image);
+        GraphicsConfiguration gc = getConfiguration();
+        BufferedImage result;
+        if (gc == null) {
+            int type = transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB
+                                                           : BufferedImage.TYPE_INT_ARGB_PRE;
+            if (image.getType() == type) return image;
+            result = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        } else {
+            if (image.getColorModel().equals(gc.getColorModel(transparency))) return image;
+            result = gc.createCompatibleImage(image.getWidth(), image.getHeight(), transparency);
+        }
+        
+        Graphics2D g = result.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return result;
+    }
+    
+    /**
+     * Makes an empty image in the format that is fastest to draw on the screen.
+     * @param width Width in pixels
+     * @param height Height in pixels
+     * @param transparency Transparency.OPAQUE, BITMASK or TRANSLUCENT
+     * @return A new, fully see-through (or black if opaque) image
+     */
+    public static BufferedImage createCompatibleImage(int width, int height, int transparency) {
+        GraphicsConfiguration gc = getConfiguration();
+        if (gc == null) {
+            int type = transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB
+                                                           : BufferedImage.TYPE_INT_ARGB_PRE;
+            return new BufferedImage(width, height, type);
+        }
+        return gc.createCompatibleImage(width, height, transparency);
+    }
+    
+    /**
+     * Works out the least transparency an image needs by looking
+     * at its alpha values.
+     * @param image The image to check
+     * @return Transparency.OPAQUE, BITMASK or TRANSLUCENT
+     */
+    public static int transparencyOf(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return Transparency.OPAQUE;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int[] row = new int[w];
+        boolean seeThrough = false;
+        for (int y = 0; y < h; y++) {
+            image.getRGB(0, y, w, 1, row, 0, w);
+            for (int x = 0; x < w; x++) {
+                int a = row[x] >>> 24;
+                if (a == 0) {
+                    seeThrough = true;
+                } else if (a != 255) {
+                    return Transparency.TRANSLUCENT;
+                }
+            }
+        }
+        return seeThrough ? Transparency.BITMASK : Transparency.OPAQUE;
+    }
+    
+    /**
+     * @return The configuration of the main screen, or null if there is none
+     */
+    private static GraphicsConfiguration getConfiguration() {
+        if (GraphicsEnvironment.isHeadless()) return null;
+        return GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration();
+    }
+}
@@ -37,6 +37,13 @@ public interface IteratingAnimation {
      */
     BufferedImage getNextFrame();
     
+    /**
+     * Same as getNextFrame, but gives the frame as a rectangle on
+     * a sheet image, which is quicker to draw
+     * @return That frame
+     */
+    SpriteFrame getNextSpriteFrame();
+    
     /**
      * This will change the frame that the animation is
      * currently on so that the next time getNextFrame is
@@ -0,0 +1,138 @@
+package model.animation;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A small compressor for sprite packs, writing the LZ4 block format:
+ * a run of sequences, each a token byte (literal length in the high
+ * nibble, match length minus 4 in the low one), any extra length bytes,
+ * the literals, then a 2 byte little endian offset back to the match.
+ * The last sequence has only literals. Decompressing is a few byte copies
+ * per sequence, much faster than inflating a PNG.
+ *
+ * It compresses greedily with a single hash table, which is enough for
+ * sprites: long runs of see-through pixels shrink to almost nothing.
+ * @author Nick Cheng
+ */
+final class Lz4 {
+    private static final int MIN_MATCH = 4;
+    /** the format wants the last 5 bytes as literals, and no match starting in the last 12 */
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_SEARCH_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_BITS = 12;
+
+    private Lz4() {
+    }
+
+    /**
+     * @param src The bytes to compress
+     * @return The compressed block
+     */
+    static byte[] compress(byte[] src) {
+        int n = src.length;
+        byte[] out = new byte[n + n / 255 + 16];
+        int op = 0;
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+
+        int anchor = 0;
+        int i = 0;
+        int limit = n - MATCH_SEARCH_LIMIT;
+        while (i < limit) {
+            int seq = readInt(src, i);
+            int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[h];
+            table[h] = i;
+            if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+                i++;
+                continue;
+            }
+            int len = MIN_MATCH;
+            while (i + len < n - LAST_LITERALS && src[ref + len] == src[i + len]) {
+                len++;
+            }
+            op = writeSequence(out, op, src, anchor, i - anchor, i - ref, len);
+            i += len;
+            anchor = i;
+        }
+        op = writeSequence(out, op, src, anchor, n - anchor, 0, 0);
+        return Arrays.copyOf(out, op);
+    }
+
+    private static int writeSequence(byte[] out, int op, byte[] src, int litStart, int litLen,
+            int offset, int matchLen) {
+        int ml = matchLen == 0 ? 0 : matchLen - MIN_MATCH;
+        out[op++] = (byte) ((Math.min(litLen, 15) << 4) | Math.min(ml, 15));
+        op = writeLength(out, op, litLen);
+        System.arraycopy(src, litStart, out, op, litLen);
+        op += litLen;
+        if (matchLen == 0) return op;
+        out[op++] = (byte) offset;
+        out[op++] = (byte) (offset >>> 8);
+        return writeLength(out, op, ml);
+    }
+
+    /** lengths of 15 or more continue in extra bytes of 255s and a remainder */
+    private static int writeLength(byte[] out, int op, int len) {
+        if (len < 15) return op;
+        len -= 15;
+        while (len >= 255) {
+            out[op++] = (byte) 255;
+            len -= 255;
+        }
+        out[op++] = (byte) len;
+        return op;
+    }
+
+    /**
+     * @param src The compressed block, from its position to its limit
+     * @param dst Receives the bytes. Must be exactly the original size.
+     * @throws IllegalArgumentException If the block is corrupt
+     */
+    static void decompress(ByteBuffer src, byte[] dst) {
+        int op = 0;
+        try {
+            while (true) {
+                int token = src.get() & 0xff;
+                int litLen = readLength(src, token >>> 4);
+                src.get(dst, op, litLen);
+                op += litLen;
+                if (!src.hasRemaining()) break;
+
+                int offset = (src.get() & 0xff) | ((src.get() & 0xff) << 8);
+                int matchLen = readLength(src, token & 15) + MIN_MATCH;
+                int ref = op - offset;
+                if (offset == 0 || ref < 0) {
+                    throw new IllegalArgumentException("Corrupt block: bad offset " + offset);
+                }
+                //may overlap itself, so copy a byte at a time
+                for (int end = op + matchLen; op < end; ) {
+                    dst[op++] = dst[ref++];
+                }
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Corrupt block", e);
+        }
+        if (op != dst.length) {
+            throw new IllegalArgumentException("Corrupt block: " + op + " bytes, expected " + dst.length);
+        }
+    }
+
+    private static int readLength(ByteBuffer src, int len) {
+        if (len == 15) {
+            int b;
+            do {
+                b = src.get() & 0xff;
+                len += b;
+            } while (b == 255);
+        }
+        return len;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,105 @@
+package model.animation;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import model.Constants;
+
+/**
+ * One frame of an animation: a rectangle on a sheet image. Most frames
+ * share their sheet with many others (see TextureAtlas), so they are
+ * drawn with the drawImage overload that copies part of an image.
+ * @author Nick Cheng
+ */
+public class SpriteFrame {
+    /** The image the frame is on */
+    public final BufferedImage sheet;
+    /** Where the frame is on the sheet */
+    public final int x;
+    public final int y;
+    public final int width;
+    public final int height;
+    
+    /** the frame on its own, made the first time it is asked for */
+    private BufferedImage image;
+    /** which pixels are solid, made when the frame is loaded */
+    private BitMask mask;
+    /** the mask at the last few sizes asked for, replaced in turn */
+    private final BitMask[] scaledMasks = new BitMask[4];
+    private int nextScaled;
+    
+    public SpriteFrame(BufferedImage sheet, int x, int y, int width, int height) {
+        this.sheet = sheet;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        if (x == 0 && y == 0 && width == sheet.getWidth() && height == sheet.getHeight()) {
+            image = sheet;
+        }
+    }
+    
+    /**
+     * A frame that is a whole image by itself
+     * @param image The image
+     */
+    public SpriteFrame(BufferedImage image) {
+        this(image, 0, 0, image.getWidth(), image.getHeight());
+    }
+    
+    /**
+     * Draws the frame with its top left corner at (dx,dy), through
+     * whatever transform the graphics has.
+     * @param g The graphics to draw with
+     * @param dx Left edge
+     * @param dy Top edge
+     */
+    public void draw(Graphics2D g, int dx, int dy) {
+        g.drawImage(sheet, dx, dy, dx + width, dy + height, x, y, x + width, y + height, null);
+    }
+    
+    /**
+     * The frame as an image of its own. This shares the pixels of the
+     * sheet, but can be slower to draw than using draw.
+     * @return The image of this frame
+     */
+    public synchronized BufferedImage getImage() {
+        if (image == null) {
+            image = sheet.getSubimage(x, y, width, height);
+        }
+        return image;
+    }
+    
+    /**
+     * Which pixels of the frame are solid (see Constants.HIT_ALPHA).
+     * The asset loader makes the masks of the frames it loads, so this
+     * is only slow for frames made some other way.
+     * @return The mask
+     */
+    public synchronized BitMask getMask() {
+        if (mask == null) {
+            mask = BitMask.of(sheet, x, y, width, height, Constants.HIT_ALPHA);
+        }
+        return mask;
+    }
+    
+    /**
+     * The mask scaled to a size. The last few sizes asked for are kept,
+     * so movie clips at a few different scales that share the frame
+     * only make their masks once.
+     * @param w Width to scale to
+     * @param h Height to scale to
+     * @return The scaled mask
+     */
+    public synchronized BitMask getMask(int w, int h) {
+        BitMask m = getMask();
+        if (w == width && h == height) return m;
+        for (BitMask scaled : scaledMasks) {
+            if (scaled != null && scaled.width == w && scaled.height == h) return scaled;
+        }
+        BitMask scaled = m.scale(w, h);
+        scaledMasks[nextScaled] = scaled;
+        nextScaled = (nextScaled + 1) % scaledMasks.length;
+        return scaled;
+    }
+}
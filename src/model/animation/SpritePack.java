@@ -0,0 +1,324 @@
+package model.animation;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A sprite pack holds every animation of an images folder in one file,
+ * already decoded. Reading a frame from it is a copy out of a memory
+ * mapped file (plus an LZ4 decompress if it was packed compressed),
+ * instead of opening and inflating a PNG per frame.
+ *
+ * Make a pack with the main method of this class, and run it again
+ * whenever the images change:
+ *
+ *      java model.animation.SpritePack images images.pack [-lz4]
+ *
+ * Every folder that only holds images is stored as one animation under
+ * its path (e.g. images/guy/walk), and every other image is stored on
+ * its own (e.g. images/dot.png). Animations that are not in the pack are
+ * read from their folders as usual.
+ *
+ * The file is: the magic number, the version and the number of entries,
+ * then for each entry its path (2 byte length, UTF-8), its number of
+ * frames and for each frame the width, height, offset of its pixels in the
+ * file and their stored length, and after that the pixels. Pixels are
+ * premultiplied ARGB ints, big endian, row by row. A frame whose stored
+ * length is less than width*height*4 is LZ4 compressed.
+ * @author Nick Cheng
+ */
+public class SpritePack {
+    private static final int MAGIC = 0x5350414B; // "SPAK"
+    private static final int VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static class Frame {
+        int width;
+        int height;
+        long offset;
+        int length;
+    }
+
+    private final File file;
+    private final MappedByteBuffer data;
+    private final Map<String, Frame[]> entries = new HashMap<String, Frame[]>();
+
+    /**
+     * Opens a pack and reads its index. The pixels are only read
+     * when an animation is asked for.
+     * @param file The pack file
+     * @throws IOException If the file cannot be read or is not a sprite pack
+     */
+    public SpritePack(File file) throws IOException {
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            //the mapping stays valid after the channel is closed
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+        try {
+            readIndex();
+        } catch (RuntimeException e) {
+            throw new IOException("Not a valid sprite pack: " + file.getPath(), e);
+        }
+    }
+
+    private void readIndex() throws IOException {
+        ByteBuffer in = data.duplicate();
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a sprite pack: " + file.getPath());
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported sprite pack version " + version + ": " + file.getPath());
+        }
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[in.getShort() & 0xffff];
+            in.get(name);
+            Frame[] frames = new Frame[in.getInt()];
+            for (int j = 0; j < frames.length; j++) {
+                Frame f = new Frame();
+                f.width = in.getInt();
+                f.height = in.getInt();
+                f.offset = in.getLong();
+                f.length = in.getInt();
+                if (f.offset + f.length > data.capacity()) {
+                    throw new IOException("Truncated sprite pack: " + file.getPath());
+                }
+                frames[j] = f;
+            }
+            entries.put(new String(name, UTF8), frames);
+        }
+    }
+
+    /**
+     * Turns a file path into the form used in packs: '/' separated
+     */
+    private static String key(String path) {
+        return new File(path).getPath().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * @param path The relative path of an animation folder or image
+     * @return Whether the pack has it
+     */
+    public boolean contains(String path) {
+        return entries.containsKey(key(path));
+    }
+
+    /**
+     * Lists what is in a folder of the pack, like File.list
+     * @param path The relative path of a folder
+     * @return The names of the animations and images directly in
+     *      the folder, sorted, or null if the pack has none
+     */
+    public String[] list(String path) {
+        String prefix = key(path) + "/";
+        TreeSet<String> names = new TreeSet<String>();
+        for (String k : entries.keySet()) {
+            if (k.startsWith(prefix) && k.indexOf('/', prefix.length()) == -1) {
+                names.add(k.substring(prefix.length()));
+            }
+        }
+        return names.isEmpty() ? null : names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Reads the frames of an animation
+     * @param path The relative path of the animation folder or image
+     * @return The frames as TYPE_INT_ARGB_PRE images, or null if
+     *      the pack does not have it
+     * @throws IOException If the pack is corrupt
+     */
+    public List<BufferedImage> read(String path) throws IOException {
+        Frame[] frames = entries.get(key(path));
+        if (frames == null) return null;
+        List<BufferedImage> images = new ArrayList<BufferedImage>(frames.length);
+        for (Frame f : frames) {
+            images.add(readFrame(f));
+        }
+        return images;
+    }
+
+    private BufferedImage readFrame(Frame f) throws IOException {
+        BufferedImage image = new BufferedImage(f.width, f.height, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        ByteBuffer in = data.duplicate();
+        in.position((int) f.offset);
+        in.limit((int) f.offset + f.length);
+        int raw = f.width * f.height * 4;
+        if (f.length == raw) {
+            in.slice().asIntBuffer().get(pixels);
+        } else {
+            byte[] bytes = new byte[raw];
+            try {
+                Lz4.decompress(in.slice(), bytes);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt sprite pack: " + file.getPath(), e);
+            }
+            ByteBuffer.wrap(bytes).asIntBuffer().get(pixels);
+        }
+        return image;
+    }
+
+    /** @return Number of animations and images in the pack */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Packs every animation under a folder into one file
+     * @param root The images folder. Paths in the pack start with its path
+     *      as given, so give it relative to where the game runs
+     * @param out The pack file to write
+     * @param compress Whether to LZ4 compress the frames
+     * @throws IOException If an image cannot be read or the pack cannot be written
+     */
+    public static void write(File root, File out, boolean compress) throws IOException {
+        Map<String, List<File>> anims = new HashMap<String, List<File>>();
+        collect(root, anims);
+        List<String> names = new ArrayList<String>(anims.keySet());
+        Collections.sort(names);
+
+        //read and encode everything first, to know where the pixels go
+        List<int[]> sizes = new ArrayList<int[]>();
+        List<byte[]> blocks = new ArrayList<byte[]>();
+        long indexSize = 12;
+        for (String name : names) {
+            indexSize += 2 + name.getBytes(UTF8).length + 4;
+            for (File f : anims.get(name)) {
+                BufferedImage image = ImageIO.read(f);
+                if (image == null) {
+                    throw new IOException("Not a readable image: " + f.getPath());
+                }
+                byte[] pixels = toPremultiplied(image);
+                if (compress) {
+                    byte[] packed = Lz4.compress(pixels);
+                    if (packed.length < pixels.length) pixels = packed;
+                }
+                sizes.add(new int[] {image.getWidth(), image.getHeight()});
+                blocks.add(pixels);
+                indexSize += 20;
+            }
+        }
+
+        DataOutputStream o = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out)));
+        try {
+            o.writeInt(MAGIC);
+            o.writeInt(VERSION);
+            o.writeInt(names.size());
+            long offset = indexSize;
+            int frame = 0;
+            for (String name : names) {
+                byte[] b = name.getBytes(UTF8);
+                o.writeShort(b.length);
+                o.write(b);
+                int n = anims.get(name).size();
+                o.writeInt(n);
+                for (int i = 0; i < n; i++, frame++) {
+                    o.writeInt(sizes.get(frame)[0]);
+                    o.writeInt(sizes.get(frame)[1]);
+                    o.writeLong(offset);
+                    o.writeInt(blocks.get(frame).length);
+                    offset += blocks.get(frame).length;
+                }
+            }
+            for (byte[] block : blocks) {
+                o.write(block);
+            }
+        } finally {
+            o.close();
+        }
+    }
+
+    /**
+     * Finds the animations under a folder: folders of only images are
+     * one animation, other images are animations of one frame
+     */
+    private static void collect(File dir, Map<String, List<File>> anims) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        Arrays.sort(files); //some platforms don't auto-sort (e.g. Ubuntu)
+        boolean hasFolders = false;
+        for (File f : files) {
+            hasFolders |= f.isDirectory();
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                collect(f, anims);
+            } else if (isImage(f)) {
+                if (hasFolders) {
+                    anims.put(key(f.getPath()), new ArrayList<File>(Arrays.asList(f)));
+                } else {
+                    String k = key(dir.getPath());
+                    if (!anims.containsKey(k)) anims.put(k, new ArrayList<File>());
+                    anims.get(k).add(f);
+                }
+            }
+        }
+    }
+
+    private static boolean isImage(File f) {
+        String name = f.getName().toLowerCase();
+        return name.endsWith(".png") || name.endsWith(".gif") || name.endsWith(".jpg")
+                || name.endsWith(".jpeg") || name.endsWith(".bmp");
+    }
+
+    private static byte[] toPremultiplied(BufferedImage image) {
+        BufferedImage pre = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = pre.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        int[] pixels = ((DataBufferInt) pre.getRaster().getDataBuffer()).getData();
+        ByteBuffer b = ByteBuffer.allocate(pixels.length * 4);
+        b.asIntBuffer().put(pixels);
+        return b.array();
+    }
+
+    /**
+     * Makes a sprite pack from an images folder.
+     * Usage: SpritePack imagesFolder packFile [-lz4]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java model.animation.SpritePack imagesFolder packFile [-lz4]");
+            System.exit(-1);
+        }
+        boolean compress = args.length > 2 && args[2].equals("-lz4");
+        try {
+            write(new File(args[0]), new File(args[1]), compress);
+            SpritePack pack = new SpritePack(new File(args[1]));
+            System.out.println("Packed " + pack.size() + " animations into " + args[1]
+                    + " (" + new File(args[1]).length() + " bytes)");
+        } catch (IOException e) {
+            System.err.println("Could not make sprite pack: " + e.getMessage());
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package model.animation;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packs animation frames onto a few large sheet images, so that a game
+ * with hundreds of frames does not need hundreds of separate images.
+ * 
+ * Frames are placed as they are added, with a skyline packer: each sheet
+ * keeps the outline of the tops of the frames placed so far, and a new
+ * frame goes wherever it would sit lowest on that outline (leftmost on
+ * ties). When it fits on none of the open sheets, a new sheet is started.
+ * Frames larger than a sheet are kept as images of their own.
+ * 
+ * The space of released frames is reused: a new frame goes in the
+ * smallest freed rectangle it fits in before the skyline is tried, and the
+ * rest of the rectangle stays free. The fullest sheets are tried first,
+ * so that the emptier ones run out of frames and are dropped.
+ * 
+ * Opaque, bitmask and translucent frames (see ImageLoader.transparencyOf)
+ * go on separate sheets of their own kind, so packing an opaque frame does
+ * not make it slower to draw.
+ * 
+ * A one pixel gutter is left around every frame, so that scaled or rotated
+ * frames do not pick up the edges of their neighbors. It is transparent,
+ * or on opaque sheets a copy of the frame's edge.
+ * @author Nick Cheng
+ */
+public class TextureAtlas {
+    /** Empty pixels between neighboring frames */
+    private static final int GUTTER = 1;
+    
+    /** so frames go on the fullest sheets, and the emptiest ones drain and are dropped */
+    private static final Comparator<Sheet> FULLEST_FIRST = new Comparator<Sheet>() {
+        @Override
+        public int compare(Sheet a, Sheet b) {
+            return a.live > b.live ? -1 : a.live < b.live ? 1 : 0;
+        }
+    };
+    
+    private final int sheetSize;
+    private final List<Sheet> sheets = new ArrayList<Sheet>();
+    private long usedPixels;
+    
+    /**
+     * A sheet and its skyline. Segment i covers columns skyX[i] up to
+     * skyX[i+1] (or the sheet's width for the last one) at height skyY[i].
+     */
+    private static class Sheet {
+        final BufferedImage image;
+        /** Transparency.OPAQUE, BITMASK or TRANSLUCENT */
+        final int transparency;
+        int[] skyX = new int[16];
+        int[] skyY = new int[16];
+        int segments;
+        /** pixels covered by frames that have not been released */
+        long live;
+        /** space of released frames, gutters included */
+        final List<Rectangle> free = new ArrayList<Rectangle>();
+        
+        Sheet(BufferedImage image, int transparency) {
+            this.image = image;
+            this.transparency = transparency;
+            segments = 1;
+        }
+    }
+    
+    /**
+     * @param sheetSize The width and height of each sheet, in pixels
+     */
+    public TextureAtlas(int sheetSize) {
+        this.sheetSize = sheetSize;
+    }
+    
+    /**
+     * Copies an image onto a sheet of its transparency.
+     * @param image The frame to add, best made by ImageLoader so its
+     *      transparency is known
+     * @return Where the frame ended up
+     */
+    public synchronized SpriteFrame add(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        if (w + GUTTER > sheetSize || h + GUTTER > sheetSize) {
+            return new SpriteFrame(image);
+        }
+        
+        int transparency = image.getTransparency();
+        Collections.sort(sheets, FULLEST_FIRST);
+        for (Sheet sheet : sheets) {
+            if (sheet.transparency != transparency) continue;
+            SpriteFrame frame = place(sheet, image, w, h);
+            if (frame != null) return frame;
+        }
+        Sheet sheet = new Sheet(createSheet(transparency), transparency);
+        sheets.add(sheet);
+        return place(sheet, image, w, h);
+    }
+    
+    /**
+     * Copies every image onto the sheets, tallest first, which
+     * packs tighter than adding them in any order.
+     * @param images The frames to add
+     * @return Where each frame ended up, in the same order as images
+     */
+    public synchronized List<SpriteFrame> addAll(List<BufferedImage> images) {
+        Integer[] order = new Integer[images.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        final List<BufferedImage> in = images;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return in.get(b).getHeight() - in.get(a).getHeight();
+            }
+        });
+        SpriteFrame[] frames = new SpriteFrame[order.length];
+        for (Integer i : order) {
+            frames[i] = add(images.get(i));
+        }
+        List<SpriteFrame> result = new ArrayList<SpriteFrame>();
+        for (SpriteFrame f : frames) result.add(f);
+        return result;
+    }
+    
+    /**
+     * Finds the lowest spot for a w x h frame on a sheet and copies it there
+     * @return The frame, or null if it does not fit
+     */
+    private SpriteFrame place(Sheet s, BufferedImage image, int w, int h) {
+        int pw = w + GUTTER;
+        int ph = h + GUTTER;
+        if (!s.free.isEmpty()) {
+            SpriteFrame frame = placeInFree(s, image, pw, ph);
+            if (frame != null) return frame;
+        }
+        int bestY = Integer.MAX_VALUE;
+        int bestX = 0;
+        int bestSegment = -1;
+        for (int i = 0; i < s.segments; i++) {
+            int x = s.skyX[i];
+            if (x + pw > sheetSize) break;
+            //the frame rests on the highest segment under it
+            int y = 0;
+            for (int j = i; j < s.segments && s.skyX[j] < x + pw; j++) {
+                y = Math.max(y, s.skyY[j]);
+            }
+            if (y + ph <= sheetSize && y < bestY) {
+                bestY = y;
+                bestX = x;
+                bestSegment = i;
+            }
+        }
+        if (bestSegment == -1) return null;
+        
+        raise(s, bestSegment, bestX + pw, bestY + ph);
+        return copy(s, image, bestX, bestY, false);
+    }
+    
+    /**
+     * Puts a frame in the smallest freed rectangle it fits in, leaving
+     * the rest of the rectangle free
+     * @return The frame, or null if it fits in none
+     */
+    private SpriteFrame placeInFree(Sheet s, BufferedImage image, int pw, int ph) {
+        int best = -1;
+        long bestArea = Long.MAX_VALUE;
+        for (int i = 0; i < s.free.size(); i++) {
+            Rectangle r = s.free.get(i);
+            long area = (long) r.width * r.height;
+            if (r.width >= pw && r.height >= ph && area < bestArea) {
+                best = i;
+                bestArea = area;
+            }
+        }
+        if (best == -1) return null;
+        
+        Rectangle r = s.free.remove(best);
+        //split the rest along the shorter side, keeping the larger piece whole
+        int restW = r.width - pw;
+        int restH = r.height - ph;
+        if (restW > restH) {
+            addFree(s, r.x + pw, r.y, restW, r.height);
+            addFree(s, r.x, r.y + ph, pw, restH);
+        } else {
+            addFree(s, r.x + pw, r.y, restW, ph);
+            addFree(s, r.x, r.y + ph, r.width, restH);
+        }
+        return copy(s, image, r.x, r.y, true);
+    }
+    
+    private static void addFree(Sheet s, int x, int y, int w, int h) {
+        if (w > 0 && h > 0) s.free.add(new Rectangle(x, y, w, h));
+    }
+    
+    /**
+     * Copies a frame onto a sheet, with its gutter
+     * @param reused Whether the spot held a released frame before
+     */
+    private SpriteFrame copy(Sheet s, BufferedImage image, int x, int y, boolean reused) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        Graphics2D g = s.image.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        if (s.transparency == Transparency.OPAQUE) {
+            //fill the gutter with the frame's right and bottom edges
+            g.drawImage(image, x + GUTTER, y + GUTTER, null);
+            g.drawImage(image, x + GUTTER, y, null);
+            g.drawImage(image, x, y + GUTTER, null);
+        } else if (reused) {
+            g.setColor(new Color(0, 0, 0, 0));
+            g.fillRect(x, y, w + GUTTER, h + GUTTER);
+        }
+        g.drawImage(image, x, y, null);
+        g.dispose();
+        usedPixels += (long) w * h;
+        s.live += (long) w * h;
+        return new SpriteFrame(s.image, x, y, w, h);
+    }
+    
+    /**
+     * Raises the skyline to top from segment i up to column right
+     */
+    private void raise(Sheet s, int i, int right, int top) {
+        //find the segment the new top ends in
+        int j = i;
+        while (j + 1 < s.segments && s.skyX[j + 1] <= right) j++;
+        boolean split = right < sheetSize && (j + 1 >= s.segments || s.skyX[j + 1] > right);
+        int restY = s.skyY[j];
+        
+        //segments i..j become one segment, and the rest of segment j (if any) stays
+        int removed = j - i;
+        int added = split ? 1 : 0;
+        int newCount = s.segments - removed + added;
+        if (newCount > s.skyX.length) {
+            s.skyX = Arrays.copyOf(s.skyX, newCount * 2);
+            s.skyY = Arrays.copyOf(s.skyY, newCount * 2);
+        }
+        int tail = s.segments - (j + 1);
+        System.arraycopy(s.skyX, j + 1, s.skyX, i + 1 + added, tail);
+        System.arraycopy(s.skyY, j + 1, s.skyY, i + 1 + added, tail);
+        s.skyY[i] = top;
+        if (split) {
+            s.skyX[i + 1] = right;
+            s.skyY[i + 1] = restY;
+        }
+        s.segments = newCount;
+    }
+    
+    /**
+     * Hands back frames that are no longer needed. The space they took
+     * is reused for new frames, and a sheet is dropped (and its memory
+     * freed once nothing refers to it) when every frame on it has been
+     * released. Do not draw the frames after this.
+     * @param frames Frames made by this atlas
+     * @return Bytes of memory let go of, counting 4 bytes a pixel: the
+     *      sheets dropped, and the frames that were images of their own
+     */
+    public synchronized long release(List<SpriteFrame> frames) {
+        long freed = 0;
+        for (SpriteFrame f : frames) {
+            Sheet s = null;
+            int i = 0;
+            for (; i < sheets.size(); i++) {
+                if (sheets.get(i).image == f.sheet) {
+                    s = sheets.get(i);
+                    break;
+                }
+            }
+            if (s == null) {
+                //an image of its own, or its sheet is already gone
+                if (f.width + GUTTER > sheetSize || f.height + GUTTER > sheetSize) {
+                    freed += (long) f.width * f.height * 4;
+                }
+                continue;
+            }
+            long pixels = (long) f.width * f.height;
+            s.live -= pixels;
+            usedPixels -= pixels;
+            if (s.live <= 0) {
+                sheets.remove(i);
+                freed += (long) sheetSize * sheetSize * 4;
+            } else {
+                s.free.add(new Rectangle(f.x, f.y, f.width + GUTTER, f.height + GUTTER));
+            }
+        }
+        return freed;
+    }
+    
+    private BufferedImage createSheet(int transparency) {
+        return ImageLoader.createCompatibleImage(sheetSize, sheetSize, transparency);
+    }
+    
+    /** @return Number of sheets made so far */
+    public synchronized int getSheetCount() {
+        return sheets.size();
+    }
+    
+    public int getSheetSize() {
+        return sheetSize;
+    }
+    
+    /**
+     * @return Fraction of the sheets' area covered by frames
+     */
+    public synchronized double getOccupancy() {
+        if (sheets.isEmpty()) return 0;
+        return (double) usedPixels / ((long) sheets.size() * sheetSize * sheetSize);
+    }
+}
@@ -26,7 +26,12 @@ public class Utils {
     }
     
     public static boolean rect_collision (Point p1, int w1, int h1, Point p2, int w2, int h2){
-        return !(p1.x > p2.x+w2 || p1.x+w1 < p2.x || p1.y > p2.y+h2 || p1.y+h1 < p2.y);
+        return rect_collision(p1.x, p1.y, w1, h1, p2.x, p2.y, w2, h2);
+    }
+    
+    public static boolean rect_collision (int x1, int y1, int w1, int h1,
+                                          int x2, int y2, int w2, int h2){
+        return !(x1 > x2+w2 || x1+w1 < x2 || y1 > y2+h2 || y1+h1 < y2);
     }
     
     public static Point addPoints(Point p1, Point p2){
@@ -0,0 +1,308 @@
+package utils.pathfinding;
+
+import java.awt.Point;
+import java.util.Arrays;
+
+/**
+ * A flow field (also called a Dijkstra map) toward a single goal. One search
+ * from the goal works out, for every cell of the grid, the cost of reaching
+ * the goal and the neighboring cell to step to next. Any number of agents
+ * heading for the same goal can then look up their next step in constant
+ * time instead of each running their own search.
+ *
+ * Movement follows the same rules as Pathfinding, including the diagonal
+ * levels: with level 1 every step handed out is cardinal, with level 2 a
+ * diagonal step is replaced by a cardinal one when it would cut a corner,
+ * and with level 3 diagonal steps are handed out as they are.
+ *
+ * The field listens to its ObstacleGrid. When a cell becomes a wall, only
+ * the cells that were routed through it are searched again. When a wall is
+ * removed, the search continues outward from around that cell until no cost
+ * can be improved any further.
+ * @author Nick Cheng
+ */
+public class FlowField implements ObstacleListener {
+    private static final double INFINITY = Double.MAX_VALUE;
+
+    /** neighbor offsets, in the same order the searches visit them */
+    private static final int[] DX = { -1, 0, 1, 0, -1, 1, -1, 1 };
+    private static final int[] DY = { 0, -1, 0, 1, -1, -1, 1, 1 };
+
+    private final ObstacleGrid grid;
+    private final int rows;
+    private final int cols;
+    private final int diag;
+    private final int neighbors;
+
+    private int goal;
+    /** cost of reaching the goal from each cell (the integration field) */
+    private final double[] cost;
+    /** the neighboring cell to step to next from each cell, -1 for none (the direction field) */
+    private final int[] next;
+
+    private final IndexedHeap open;
+    private int nextOrder;
+    /** marks cells that have to be searched again after a wall was added */
+    private final int[] marked;
+    private int generation = 0;
+    private final IntList stack = new IntList();
+
+    /**
+     * Builds a flow field for a goal and starts listening for changes to the grid.
+     * @param grid The obstacle grid
+     * @param goal The cell every agent is heading for (x,y) i.e. (column,row)
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     */
+    public FlowField(ObstacleGrid grid, Point goal, int diag) {
+        if (diag < 0 || diag > 3) {
+            throw new IllegalArgumentException("diag must be between 0..3");
+        }
+        this.grid = grid;
+        this.diag = diag;
+        rows = grid.getRows();
+        cols = grid.getCols();
+        neighbors = diag == 0 ? 4 : 8;
+        cost = new double[rows * cols];
+        next = new int[rows * cols];
+        marked = new int[rows * cols];
+        open = new IndexedHeap(rows * cols);
+        setGoal(goal);
+        grid.addListener(this);
+    }
+
+    /**
+     * Changes the goal and rebuilds the whole field.
+     * @param goal The new goal (x,y) i.e. (column,row)
+     */
+    public void setGoal(Point goal) {
+        this.goal = goal.y * cols + goal.x;
+        rebuild();
+    }
+
+    public Point getGoal() {
+        return new Point(goal % cols, goal / cols);
+    }
+
+    /**
+     * Rebuilds the whole field from scratch. Called for you when the
+     * grid's markChanged is called.
+     */
+    public void rebuild() {
+        Arrays.fill(cost, INFINITY);
+        Arrays.fill(next, -1);
+        open.clear();
+        nextOrder = 0;
+        if (grid.isWall(goal % cols, goal / cols)) return;
+        cost[goal] = 0;
+        open.push(goal, 0, nextOrder++);
+        propagate();
+    }
+
+    /**
+     * The cost of walking from a cell to the goal.
+     * @param x The column
+     * @param y The row
+     * @return The cost, or Double.MAX_VALUE if the goal cannot be reached
+     */
+    public double getCost(int x, int y) {
+        if (x < 0 || y < 0 || x >= cols || y >= rows) return INFINITY;
+        return cost[y * cols + x];
+    }
+
+    /**
+     * The cell to step to next from (x,y), with diagonal steps filled in
+     * according to the diagonal level. Does not allocate.
+     * @param x The column
+     * @param y The row
+     * @return The cell id (row * columns + column) of the next step, or -1
+     *      if (x,y) is the goal or the goal cannot be reached from it
+     */
+    public int getNext(int x, int y) {
+        if (x < 0 || y < 0 || x >= cols || y >= rows) return -1;
+        int n = next[y * cols + x];
+        if (n == -1) return -1;
+        int nx = n % cols;
+        int ny = n / cols;
+        if (nx != x && ny != y && (diag == 1 || (diag == 2 && !(isOpen(nx, y) && isOpen(x, ny))))) {
+            //fill in the diagonal, exactly like a path would be
+            return isOpen(nx, y) ? y * cols + nx : ny * cols + x;
+        }
+        return n;
+    }
+
+    /**
+     * The cell to step to next from a given cell.
+     * @param from The current cell (x,y) i.e. (column,row)
+     * @return The next cell, or null if from is the goal or the goal
+     *      cannot be reached from it
+     */
+    public Point nextStep(Point from) {
+        int n = getNext(from.x, from.y);
+        if (n == -1) return null;
+        return new Point(n % cols, n / cols);
+    }
+
+    /**
+     * Rebuilds everything after the whole grid may have changed.
+     */
+    @Override
+    public void gridChanged(ObstacleGrid changed) {
+        rebuild();
+    }
+
+    /**
+     * Updates the field after a cell of the grid changed.
+     */
+    @Override
+    public void cellChanged(ObstacleGrid changed, int x, int y) {
+        int c = y * cols + x;
+        if (c == goal) {
+            rebuild();
+        } else if (grid.isWall(x, y)) {
+            wallAdded(x, y);
+        } else {
+            wallRemoved(x, y);
+        }
+    }
+
+    /**
+     * A new wall can only make costs go up, and only for cells whose route
+     * to the goal ran through the wall or squeezed diagonally past it.
+     * Those cells and everything routed through them are cleared, then
+     * searched again starting from the untouched cells around them.
+     */
+    private void wallAdded(int x, int y) {
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(marked, 0);
+            generation = 0;
+        }
+        generation++;
+        stack.clear();
+
+        int c = y * cols + x;
+        mark(c);
+        //diagonal steps around the new wall may now squeeze between two walls
+        for (int k = 0; k < neighbors; k++) {
+            int nx = x + DX[k];
+            int ny = y + DY[k];
+            if (!isOpen(nx, ny)) continue;
+            int n = ny * cols + nx;
+            if (next[n] != -1 && !canStep(nx, ny, next[n] % cols, next[n] / cols)) {
+                mark(n);
+            }
+        }
+
+        //everything routed through a cleared cell has to go too
+        for (int i = 0; i < stack.size(); i++) {
+            int v = stack.get(i);
+            int vx = v % cols;
+            int vy = v / cols;
+            for (int k = 0; k < neighbors; k++) {
+                int nx = vx + DX[k];
+                int ny = vy + DY[k];
+                if (nx < 0 || ny < 0 || nx >= cols || ny >= rows) continue;
+                int n = ny * cols + nx;
+                if (next[n] == v && marked[n] != generation) {
+                    mark(n);
+                }
+            }
+        }
+
+        open.clear();
+        nextOrder = 0;
+        for (int i = 0; i < stack.size(); i++) {
+            int v = stack.get(i);
+            cost[v] = INFINITY;
+            next[v] = -1;
+        }
+        //the cells bordering the cleared area still have correct costs
+        for (int i = 0; i < stack.size(); i++) {
+            int v = stack.get(i);
+            int vx = v % cols;
+            int vy = v / cols;
+            for (int k = 0; k < neighbors; k++) {
+                int nx = vx + DX[k];
+                int ny = vy + DY[k];
+                if (!isOpen(nx, ny)) continue;
+                int n = ny * cols + nx;
+                if (marked[n] != generation && cost[n] != INFINITY && !open.contains(n)) {
+                    open.push(n, cost[n], nextOrder++);
+                }
+            }
+        }
+        propagate();
+    }
+
+    /**
+     * Removing a wall can only make costs go down. The opened cell and its
+     * neighbors (which may now step diagonally past it) are used as seeds,
+     * and the search carries on for as long as it improves anything.
+     */
+    private void wallRemoved(int x, int y) {
+        open.clear();
+        nextOrder = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                int nx = x + dx;
+                int ny = y + dy;
+                if (!isOpen(nx, ny)) continue;
+                int n = ny * cols + nx;
+                if (cost[n] != INFINITY) {
+                    open.push(n, cost[n], nextOrder++);
+                }
+            }
+        }
+        propagate();
+    }
+
+    private void mark(int id) {
+        marked[id] = generation;
+        stack.add(id);
+    }
+
+    /**
+     * Dijkstra's algorithm from whatever is on the open set. Only ever
+     * lowers costs, so it can also be used to repair part of the field.
+     */
+    private void propagate() {
+        while (!open.isEmpty()) {
+            int u = open.poll();
+            int ux = u % cols;
+            int uy = u / cols;
+            for (int k = 0; k < neighbors; k++) {
+                int vx = ux + DX[k];
+                int vy = uy + DY[k];
+                if (!canStep(ux, uy, vx, vy)) continue;
+                int v = vy * cols + vx;
+                double alt = cost[u] + (k < 4 ? 1.0 : GridSearch.DIAGONAL_COST);
+                if (alt < cost[v]) {
+                    cost[v] = alt;
+                    next[v] = u;
+                    if (open.contains(v)) {
+                        open.update(v, alt);
+                    } else {
+                        open.push(v, alt, nextOrder++);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Can you step between two neighboring cells? A diagonal step needs at
+     * least one of the two cells it passes between to be open. The rule is
+     * the same in both directions.
+     */
+    private boolean canStep(int x, int y, int nx, int ny) {
+        if (!isOpen(nx, ny)) return false;
+        if (nx != x && ny != y) {
+            return isOpen(nx, y) || isOpen(x, ny);
+        }
+        return true;
+    }
+
+    private boolean isOpen(int x, int y) {
+        return !grid.isWall(x, y);
+    }
+}
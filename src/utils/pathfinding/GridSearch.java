@@ -0,0 +1,784 @@
+package utils.pathfinding;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * The search engine behind Pathfinding. It runs Dijkstra's algorithm and A*
+ * over an obstacle grid using the same rules as Pathfinding (see that class
+ * for the diagonal levels), but keeps all of its bookkeeping in flat arrays
+ * indexed by a packed cell id (row * columns + column) and picks the next
+ * cell from an indexed binary heap instead of scanning a list.
+ *
+ * The arrays are kept between searches and are never cleared. Instead every
+ * search gets a new generation number and a cell only counts as touched if
+ * its stamp matches the current generation, so starting a search does not
+ * cost anything proportional to the size of the grid.
+ *
+ * The results are identical to the original list based searches: cells that
+ * tie on cost come out in the order they were queued, and a cell that was
+ * queued more than once keeps its place in line once for every time it was
+ * queued, just like the duplicates in the old search list.
+ *
+ * It can also run Jump Point Search, which finds the same kind of path on
+ * grids where every step of a kind costs the same, but only puts the cells
+ * where the path may have to turn (jump points) on the open set. Long open
+ * runs are skipped over in one go instead of being expanded cell by cell.
+ *
+ * Paths can be written into a caller's PathBuffer, in which case a search
+ * allocates nothing once its arrays have grown to fit the grid. The methods
+ * returning a LinkedList copy that same result into a new list.
+ *
+ * A GridSearch is not thread safe. Use one instance per thread.
+ * @author Nick Cheng
+ */
+public class GridSearch {
+    /** Cost of moving to a diagonal neighbor. Moving to a cardinal neighbor costs 1 */
+    public static final double DIAGONAL_COST = 1.41;
+
+    private static final double INFINITY = Double.MAX_VALUE;
+
+    private int rows;
+    private int cols;
+    private boolean[][] walls;
+
+    /** the search treats every cell outside of these bounds as a wall */
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
+
+    /** consider diagonal neighbors while searching */
+    private boolean takeDiagonal;
+    /** fill in diagonal steps that cut around corners */
+    private boolean fillDiagonal;
+    /** fill in every diagonal step */
+    private boolean fillDiagonalAlways;
+
+    /** distance from start */
+    private double[] dist = new double[0];
+    /** distance from start plus estimated distance to end, for A* */
+    private double[] fscore = new double[0];
+    /** cell this cell was reached from, -1 for none */
+    private int[] previous = new int[0];
+    /** generation in which dist, fscore and previous were last written */
+    private int[] touched = new int[0];
+    /** generation in which the cell was taken off the open set */
+    private int[] closed = new int[0];
+    private int generation = 0;
+
+    /*
+     * Every time a cell is queued it gets an order number. A cell can be
+     * queued several times before it is taken off the open set, and each
+     * queuing is kept in a small first-in-first-out list per cell. The heap
+     * always uses the oldest order number of a cell to break ties.
+     */
+    private int[] queuedHead = new int[0];
+    private int[] queuedTail = new int[0];
+    private int[] entryOrder = new int[64];
+    private int[] entryNext = new int[64];
+    private int entryCount;
+    private int nextOrder;
+
+    private IndexedHeap open = new IndexedHeap(0);
+
+    /** number of cells taken off the open set during the last search */
+    private int expanded;
+
+    /*
+     * The search in progress. A search is started by begin and carried on
+     * by advance, so it can be stopped after any number of expansions and
+     * picked up again later.
+     */
+    private int searchEnd;
+    private int searchEx;
+    private int searchEy;
+    private boolean searchHeuristic;
+    /** closed cell nearest to the end so far, and its squared distance */
+    private int closest;
+    private int closestDistance;
+
+    /** results of advance */
+    static final int SEARCHING = 0;
+    static final int REACHED = 1;
+    static final int EXHAUSTED = 2;
+
+    /** holds the result of the methods that return a linked list */
+    private final PathBuffer result = new PathBuffer();
+
+    /**
+     * Finds a path with A* or Dijkstra's algorithm.
+     * @param obstacles A 2-D boolean array, true for wall. Indexed [row][column]
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param useHeuristic Use A* instead of Dijkstra's algorithm
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @return A linked list representing path from beginning to end (path includes endpoint),
+     *      or null if there is no path
+     */
+    public LinkedList<Point> findPath(boolean[][] obstacles, Point start, Point end, boolean useHeuristic, int diag) {
+        if (!findPath(obstacles, start.x, start.y, end.x, end.y, useHeuristic, diag, result)) {
+            return null;
+        }
+        return result.toList();
+    }
+
+    /**
+     * Finds a path with A* or Dijkstra's algorithm and writes it into a buffer.
+     * @param obstacles A 2-D boolean array, true for wall. Indexed [row][column]
+     * @param sx The starting column
+     * @param sy The starting row
+     * @param ex The ending column
+     * @param ey The ending row
+     * @param useHeuristic Use A* instead of Dijkstra's algorithm
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @param out Cleared, then receives the path (path includes endpoint)
+     * @return Whether there is a path. If not, out is left empty
+     */
+    public boolean findPath(boolean[][] obstacles, int sx, int sy, int ex, int ey,
+            boolean useHeuristic, int diag, PathBuffer out) {
+        out.clear();
+        prepare(obstacles, diag);
+        if (!inBounds(sx, sy)) return false;
+        int endId = inBounds(ex, ey) ? ey * cols + ex : -1;
+        if (!search(sy * cols + sx, endId, ex, ey, useHeuristic)) {
+            return false;
+        }
+        reconstructPath(endId, out);
+        return true;
+    }
+
+    /**
+     * Finds a path with Jump Point Search. The path honors the same diagonal
+     * levels and corner rules as findPath, and comes back in the same shape:
+     * every cell along the way, with diagonal steps filled in according to
+     * the diagonal level. The path is a shortest one, though where several
+     * paths tie it may pick a different one than findPath.
+     * @param obstacles A 2-D boolean array, true for wall. Indexed [row][column]
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @return A linked list representing path from beginning to end (path includes endpoint),
+     *      or null if there is no path
+     */
+    public LinkedList<Point> findPathJumpPoint(boolean[][] obstacles, Point start, Point end, int diag) {
+        if (!findPathJumpPoint(obstacles, start.x, start.y, end.x, end.y, diag, result)) {
+            return null;
+        }
+        return result.toList();
+    }
+
+    /**
+     * Finds a path with Jump Point Search and writes it into a buffer.
+     * @param obstacles A 2-D boolean array, true for wall. Indexed [row][column]
+     * @param sx The starting column
+     * @param sy The starting row
+     * @param ex The ending column
+     * @param ey The ending row
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @param out Cleared, then receives the path (path includes endpoint)
+     * @return Whether there is a path. If not, out is left empty
+     */
+    public boolean findPathJumpPoint(boolean[][] obstacles, int sx, int sy, int ex, int ey,
+            int diag, PathBuffer out) {
+        out.clear();
+        prepare(obstacles, diag);
+        if (!inBounds(sx, sy) || !inBounds(ex, ey)) return false;
+        int endId = ey * cols + ex;
+        if (!jumpSearch(sy * cols + sx, endId)) {
+            return false;
+        }
+        reconstructJumpPath(endId, out);
+        return true;
+    }
+
+    /**
+     * The number of cells taken off the open set by the last search. For
+     * a jump point search this only counts jump points.
+     * @return Number of expanded cells
+     */
+    public int getExpandedCount() {
+        return expanded;
+    }
+
+    /**
+     * Binds the grid and diagonal rules for the next search and makes
+     * sure the scratch arrays are large enough.
+     */
+    private void prepare(boolean[][] obstacles, int diag) {
+        walls = obstacles;
+        rows = obstacles.length;
+        cols = obstacles[0].length;
+        takeDiagonal = diag != 0;
+        fillDiagonal = diag == 1 || diag == 2;
+        fillDiagonalAlways = diag == 1;
+        minX = 0;
+        minY = 0;
+        maxX = cols - 1;
+        maxY = rows - 1;
+
+        int cells = rows * cols;
+        if (dist.length < cells) {
+            dist = new double[cells];
+            fscore = new double[cells];
+            previous = new int[cells];
+            touched = new int[cells];
+            closed = new int[cells];
+            queuedHead = new int[cells];
+            queuedTail = new int[cells];
+            generation = 0;
+        }
+        open.ensureCapacity(cells);
+        open.clear();
+        entryCount = 0;
+        nextOrder = 0;
+        expanded = 0;
+
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(touched, 0);
+            Arrays.fill(closed, 0);
+            generation = 0;
+        }
+        generation++;
+    }
+
+    /**
+     * Runs the search from startId until endId is the cheapest cell on
+     * the open set.
+     * @return Whether the end was reached
+     */
+    private boolean search(int startId, int endId, int ex, int ey, boolean useHeuristic) {
+        startSearch(startId, endId, ex, ey, useHeuristic);
+        return advance(Integer.MAX_VALUE) == REACHED;
+    }
+
+    /**
+     * Starts a search that is carried on by advance. The grid must not
+     * change until the search is over.
+     * @return SEARCHING, or EXHAUSTED if the start is off the grid
+     */
+    int begin(boolean[][] obstacles, int sx, int sy, int ex, int ey, boolean useHeuristic, int diag) {
+        prepare(obstacles, diag);
+        if (!inBounds(sx, sy)) {
+            searchEnd = -1;
+            closest = -1;
+            return EXHAUSTED;
+        }
+        int endId = inBounds(ex, ey) ? ey * cols + ex : -1;
+        startSearch(sy * cols + sx, endId, ex, ey, useHeuristic);
+        return SEARCHING;
+    }
+
+    private void startSearch(int startId, int endId, int ex, int ey, boolean useHeuristic) {
+        searchEnd = endId;
+        searchEx = ex;
+        searchEy = ey;
+        searchHeuristic = useHeuristic;
+        closest = startId;
+        closestDistance = Integer.MAX_VALUE;
+
+        touch(startId);
+        dist[startId] = 0;
+        enqueue(startId, useHeuristic ? fscore[startId] : dist[startId]);
+    }
+
+    /**
+     * Carries on the search started by begin for at most maxExpansions
+     * more cells.
+     * @return REACHED if the end was reached, EXHAUSTED if it cannot be,
+     *      or SEARCHING if the search ran out of expansions first
+     */
+    int advance(int maxExpansions) {
+        int endId = searchEnd;
+        int ex = searchEx;
+        int ey = searchEy;
+        boolean useHeuristic = searchHeuristic;
+        int limit = expanded + maxExpansions;
+        if (limit < expanded) limit = Integer.MAX_VALUE;
+
+        while (!open.isEmpty()) {
+            int u = open.peek();
+
+            //End search if found end point
+            if (u == endId) {
+                return REACHED;
+            }
+            if (expanded >= limit) {
+                return SEARCHING;
+            }
+
+            dequeue(u);
+            closed[u] = generation;
+            expanded++;
+
+            //A* scores every neighbor with the distance from this cell to the end
+            int ux = u % cols;
+            int uy = u / cols;
+            int xdis = ex - ux;
+            int ydis = ey - uy;
+            int sq = xdis * xdis + ydis * ydis;
+            if (sq < closestDistance) {
+                closest = u;
+                closestDistance = sq;
+            }
+            double h = 0;
+            if (useHeuristic) {
+                h = Math.sqrt(sq);
+            }
+
+            //Process neighbors, in the same order as they have always been visited
+            boolean w = isOpen(ux - 1, uy);
+            boolean n = isOpen(ux, uy - 1);
+            boolean e = isOpen(ux + 1, uy);
+            boolean s = isOpen(ux, uy + 1);
+            if (w) relax(u, u - 1, 1.0, useHeuristic, h);
+            if (n) relax(u, u - cols, 1.0, useHeuristic, h);
+            if (e) relax(u, u + 1, 1.0, useHeuristic, h);
+            if (s) relax(u, u + cols, 1.0, useHeuristic, h);
+
+            if (takeDiagonal) {
+                if ((w || n) && isOpen(ux - 1, uy - 1))
+                    relax(u, u - cols - 1, DIAGONAL_COST, useHeuristic, h);
+                if ((e || n) && isOpen(ux + 1, uy - 1))
+                    relax(u, u - cols + 1, DIAGONAL_COST, useHeuristic, h);
+                if ((w || s) && isOpen(ux - 1, uy + 1))
+                    relax(u, u + cols - 1, DIAGONAL_COST, useHeuristic, h);
+                if ((e || s) && isOpen(ux + 1, uy + 1))
+                    relax(u, u + cols + 1, DIAGONAL_COST, useHeuristic, h);
+            }
+        }
+        return EXHAUSTED;
+    }
+
+    /**
+     * Writes the path found by a search started with begin, once
+     * advance has returned REACHED.
+     */
+    void writePath(PathBuffer out) {
+        out.clear();
+        reconstructPath(searchEnd, out);
+    }
+
+    /**
+     * Writes the path to the cell nearest to the end that the search
+     * started with begin has expanded so far.
+     */
+    void writePartialPath(PathBuffer out) {
+        out.clear();
+        if (closest != -1) {
+            reconstructPath(closest, out);
+        }
+    }
+
+    /**
+     * Tries to improve the distance of v by going through u
+     */
+    private void relax(int u, int v, double weight, boolean useHeuristic, double h) {
+        double alt = dist[u] + weight;
+        touch(v);
+        if (alt < dist[v]) {
+            dist[v] = alt;
+            previous[v] = u;
+            double key = alt;
+            if (useHeuristic) {
+                fscore[v] = alt + h;
+                key = fscore[v];
+            }
+            if (open.contains(v)) {
+                open.update(v, key);
+            }
+            if (closed[v] != generation) {
+                enqueue(v, key);
+            }
+        }
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from (sx,sy) without leaving the given bounds,
+     * then reads off the distance to each target cell. Used to work out the
+     * cost of crossing a cluster in the hierarchical pathfinder.
+     * @param diagonal Whether diagonal steps are allowed
+     * @param targets Cell ids to report distances for
+     * @param count Number of targets
+     * @param out Receives the distance to each target, or Double.MAX_VALUE
+     *      if it cannot be reached
+     */
+    void distances(boolean[][] obstacles, boolean diagonal, int sx, int sy,
+            int boundMinX, int boundMinY, int boundMaxX, int boundMaxY,
+            int[] targets, int count, double[] out) {
+        prepare(obstacles, diagonal ? 3 : 0);
+        setBounds(boundMinX, boundMinY, boundMaxX, boundMaxY);
+        search(sy * cols + sx, -1, 0, 0, false);
+        for (int i = 0; i < count; i++) {
+            int t = targets[i];
+            out[i] = touched[t] == generation ? dist[t] : INFINITY;
+        }
+    }
+
+    /**
+     * Finds a shortest path from (sx,sy) to (ex,ey) without leaving the given
+     * bounds and appends its cells to out, not including the start and not
+     * filled in. Used to refine a hop of the hierarchical pathfinder.
+     * @param diagonal Whether diagonal steps are allowed
+     * @param out Receives the cell ids of the path
+     * @return Whether a path was found
+     */
+    boolean appendRawPath(boolean[][] obstacles, boolean diagonal, int sx, int sy, int ex, int ey,
+            int boundMinX, int boundMinY, int boundMaxX, int boundMaxY, IntList out) {
+        prepare(obstacles, diagonal ? 3 : 0);
+        setBounds(boundMinX, boundMinY, boundMaxX, boundMaxY);
+        int endId = ey * cols + ex;
+        if (!search(sy * cols + sx, endId, 0, 0, false)) {
+            return false;
+        }
+        int from = out.size();
+        for (int u = endId; previous[u] != -1; u = previous[u]) {
+            out.add(u);
+        }
+        out.reverse(from, out.size());
+        return true;
+    }
+
+    /**
+     * Turns a sequence of neighboring cell ids, starting with the start
+     * cell, into a point path filled in according to the diagonal level.
+     * @param out Cleared, then receives the path
+     */
+    void toPointPath(boolean[][] obstacles, int diag, IntList cells, PathBuffer out) {
+        prepare(obstacles, diag);
+        out.clear();
+        for (int i = cells.size() - 1; i > 0; i--) {
+            int u = cells.get(i);
+            int prev = cells.get(i - 1);
+            addStep(out, u % cols, u / cols, prev % cols, prev / cols);
+        }
+        out.reverse(0, out.size());
+    }
+
+    private void setBounds(int boundMinX, int boundMinY, int boundMaxX, int boundMaxY) {
+        minX = Math.max(boundMinX, 0);
+        minY = Math.max(boundMinY, 0);
+        maxX = Math.min(boundMaxX, cols - 1);
+        maxY = Math.min(boundMaxY, rows - 1);
+    }
+
+    /**
+     * The A* loop of Jump Point Search. Only jump points are put
+     * on the open set, and each one is linked to the jump point it
+     * was reached from.
+     * @return Whether the end was reached
+     */
+    private boolean jumpSearch(int startId, int endId) {
+        touch(startId);
+        dist[startId] = 0;
+        open.push(startId, jumpHeuristic(startId, endId), nextOrder++);
+
+        while (!open.isEmpty()) {
+            int u = open.poll();
+            if (u == endId) {
+                return true;
+            }
+            closed[u] = generation;
+            expanded++;
+
+            int ux = u % cols;
+            int uy = u / cols;
+            int prev = previous[u];
+            if (prev == -1) {
+                //the start has no direction yet, so try every direction
+                jumpFrom(u, -1, 0, endId);
+                jumpFrom(u, 0, -1, endId);
+                jumpFrom(u, 1, 0, endId);
+                jumpFrom(u, 0, 1, endId);
+                if (takeDiagonal) {
+                    jumpFrom(u, -1, -1, endId);
+                    jumpFrom(u, 1, -1, endId);
+                    jumpFrom(u, -1, 1, endId);
+                    jumpFrom(u, 1, 1, endId);
+                }
+                continue;
+            }
+
+            //only the natural and forced neighbors in the direction of travel
+            int dx = Integer.signum(ux - prev % cols);
+            int dy = Integer.signum(uy - prev / cols);
+            if (!takeDiagonal) {
+                if (dx != 0) {
+                    jumpFrom(u, 0, -1, endId);
+                    jumpFrom(u, 0, 1, endId);
+                    jumpFrom(u, dx, 0, endId);
+                } else {
+                    jumpFrom(u, -1, 0, endId);
+                    jumpFrom(u, 1, 0, endId);
+                    jumpFrom(u, 0, dy, endId);
+                }
+            } else if (dx != 0 && dy != 0) {
+                jumpFrom(u, 0, dy, endId);
+                jumpFrom(u, dx, 0, endId);
+                jumpFrom(u, dx, dy, endId);
+                if (!isOpen(ux - dx, uy)) jumpFrom(u, -dx, dy, endId);
+                if (!isOpen(ux, uy - dy)) jumpFrom(u, dx, -dy, endId);
+            } else if (dx != 0) {
+                jumpFrom(u, dx, 0, endId);
+                if (!isOpen(ux, uy + 1)) jumpFrom(u, dx, 1, endId);
+                if (!isOpen(ux, uy - 1)) jumpFrom(u, dx, -1, endId);
+            } else {
+                jumpFrom(u, 0, dy, endId);
+                if (!isOpen(ux + 1, uy)) jumpFrom(u, 1, dy, endId);
+                if (!isOpen(ux - 1, uy)) jumpFrom(u, -1, dy, endId);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Jumps from u in a direction and, if a jump point is found,
+     * queues it with u as its predecessor.
+     */
+    private void jumpFrom(int u, int dx, int dy, int endId) {
+        int v = takeDiagonal ? jump(u % cols, u / cols, dx, dy, endId)
+                             : jumpCardinal(u % cols, u / cols, dx, dy, endId);
+        if (v == -1) return;
+        touch(v);
+        if (closed[v] == generation) return;
+
+        int steps = Math.max(Math.abs(v % cols - u % cols), Math.abs(v / cols - u / cols));
+        double alt = dist[u] + steps * (dx != 0 && dy != 0 ? DIAGONAL_COST : 1.0);
+        if (alt < dist[v]) {
+            dist[v] = alt;
+            previous[v] = u;
+            double key = alt + jumpHeuristic(v, endId);
+            //among equal scores prefer the jump point furthest along,
+            //otherwise open maps tie everywhere and the search fans out
+            int order = -(int) Math.round(alt * 100);
+            if (open.contains(v)) {
+                open.remove(v);
+            }
+            open.push(v, key, order);
+        }
+    }
+
+    /**
+     * Octile distance when diagonals are allowed, Manhattan distance
+     * otherwise. Never overestimates, so jump point search stays exact.
+     */
+    private double jumpHeuristic(int id, int endId) {
+        int xdis = Math.abs(id % cols - endId % cols);
+        int ydis = Math.abs(id / cols - endId / cols);
+        if (!takeDiagonal) {
+            return xdis + ydis;
+        }
+        int diagonal = Math.min(xdis, ydis);
+        return diagonal * DIAGONAL_COST + (Math.max(xdis, ydis) - diagonal);
+    }
+
+    /**
+     * Can you step from (x,y) by (dx,dy)? Follows the same rules as the
+     * neighbors in the regular search: a diagonal step needs at least one
+     * of the two cells it passes between to be open.
+     */
+    private boolean canStep(int x, int y, int dx, int dy) {
+        if (!isOpen(x + dx, y + dy)) return false;
+        if (dx != 0 && dy != 0) {
+            return isOpen(x + dx, y) || isOpen(x, y + dy);
+        }
+        return true;
+    }
+
+    /**
+     * Walks from (x,y) in a direction, diagonals allowed, until it reaches a
+     * cell with a forced neighbor, the end, or a wall.
+     * @return The id of the jump point, or -1 if there is none
+     */
+    private int jump(int x, int y, int dx, int dy, int endId) {
+        while (canStep(x, y, dx, dy)) {
+            x += dx;
+            y += dy;
+            int id = y * cols + x;
+            if (id == endId) return id;
+
+            if (dx != 0 && dy != 0) {
+                if ((isOpen(x - dx, y + dy) && !isOpen(x - dx, y))
+                        || (isOpen(x + dx, y - dy) && !isOpen(x, y - dy))) {
+                    return id;
+                }
+                //a diagonal run stops wherever a straight run could turn
+                if (jump(x, y, dx, 0, endId) != -1 || jump(x, y, 0, dy, endId) != -1) {
+                    return id;
+                }
+            } else if (dx != 0) {
+                if ((isOpen(x + dx, y + 1) && !isOpen(x, y + 1))
+                        || (isOpen(x + dx, y - 1) && !isOpen(x, y - 1))) {
+                    return id;
+                }
+            } else {
+                if ((isOpen(x + 1, y + dy) && !isOpen(x + 1, y))
+                        || (isOpen(x - 1, y + dy) && !isOpen(x - 1, y))) {
+                    return id;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Walks from (x,y) in a cardinal direction, with no diagonal movement,
+     * until it reaches a cell with a forced neighbor, the end, or a wall.
+     * @return The id of the jump point, or -1 if there is none
+     */
+    private int jumpCardinal(int x, int y, int dx, int dy, int endId) {
+        while (isOpen(x + dx, y + dy)) {
+            x += dx;
+            y += dy;
+            int id = y * cols + x;
+            if (id == endId) return id;
+
+            if (dx != 0) {
+                if ((isOpen(x, y - 1) && !isOpen(x - dx, y - 1))
+                        || (isOpen(x, y + 1) && !isOpen(x - dx, y + 1))) {
+                    return id;
+                }
+            } else {
+                if ((isOpen(x - 1, y) && !isOpen(x - 1, y - dy))
+                        || (isOpen(x + 1, y) && !isOpen(x + 1, y - dy))) {
+                    return id;
+                }
+                //a vertical run stops wherever a horizontal run could turn
+                if (jumpCardinal(x, y, 1, 0, endId) != -1 || jumpCardinal(x, y, -1, 0, endId) != -1) {
+                    return id;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Resets a cell to its initial state the first time it is
+     * looked at in this generation.
+     */
+    private void touch(int id) {
+        if (touched[id] != generation) {
+            touched[id] = generation;
+            dist[id] = INFINITY;
+            fscore[id] = INFINITY;
+            previous[id] = -1;
+            queuedHead[id] = -1;
+            queuedTail[id] = -1;
+        }
+    }
+
+    /**
+     * Puts a cell in line on the open set once more
+     */
+    private void enqueue(int id, double key) {
+        if (entryCount == entryOrder.length) {
+            entryOrder = Arrays.copyOf(entryOrder, entryCount * 2);
+            entryNext = Arrays.copyOf(entryNext, entryCount * 2);
+        }
+        int entry = entryCount++;
+        entryOrder[entry] = nextOrder++;
+        entryNext[entry] = -1;
+
+        if (queuedHead[id] == -1) {
+            queuedHead[id] = entry;
+            queuedTail[id] = entry;
+            open.push(id, key, entryOrder[entry]);
+        } else {
+            entryNext[queuedTail[id]] = entry;
+            queuedTail[id] = entry;
+        }
+    }
+
+    /**
+     * Takes the oldest queuing of a cell off the open set. If the cell
+     * was queued more than once it stays on the open set with its next
+     * place in line.
+     */
+    private void dequeue(int id) {
+        int next = entryNext[queuedHead[id]];
+        queuedHead[id] = next;
+        if (next == -1) {
+            queuedTail[id] = -1;
+            open.remove(id);
+        } else {
+            open.reorder(id, entryOrder[next]);
+        }
+    }
+
+    /**
+     * Reconstructs the path from the beginning to end, filling in
+     * diagonal steps according to the diagonal level. The path is walked
+     * backwards from the end and reversed once it is complete.
+     */
+    private void reconstructPath(int endId, PathBuffer out) {
+        int u = endId;
+        while (previous[u] != -1) {
+            int prev = previous[u];
+            addStep(out, u % cols, u / cols, prev % cols, prev / cols);
+            u = prev;
+        }
+        out.reverse(0, out.size());
+    }
+
+    /**
+     * Reconstructs the path of a jump point search. Consecutive jump points
+     * always lie on a straight or diagonal line, so the cells in between
+     * are walked one step at a time and filled in like a regular path.
+     */
+    private void reconstructJumpPath(int endId, PathBuffer out) {
+        int u = endId;
+        while (previous[u] != -1) {
+            int prev = previous[u];
+            int x = u % cols;
+            int y = u / cols;
+            int px = prev % cols;
+            int py = prev / cols;
+            int dx = Integer.signum(px - x);
+            int dy = Integer.signum(py - y);
+            while (x != px || y != py) {
+                addStep(out, x, y, x + dx, y + dy);
+                x += dx;
+                y += dy;
+            }
+            u = prev;
+        }
+        out.reverse(0, out.size());
+    }
+
+    /**
+     * Adds the cell (ux,uy), reached from the neighboring cell (px,py), to a
+     * path that is being built backwards. A diagonal step is filled in with
+     * the cardinal cell it passes if the diagonal level asks for it.
+     */
+    private void addStep(PathBuffer path, int ux, int uy, int px, int py) {
+        path.add(ux, uy);
+        if (fillDiagonal && ux != px && uy != py) {
+            if (fillDiagonalAlways || !(isOpen(ux, py) && isOpen(px, uy))) {
+                if (isOpen(ux, py)) {
+                    path.add(ux, py);
+                } else {
+                    path.add(px, uy);
+                }
+            }
+        }
+    }
+
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && y >= 0 && x < cols && y < rows;
+    }
+
+    /**
+     * Is a cell an open spot on board?
+     * I.E. Not off the board (or outside the search bounds), and not a wall?
+     */
+    private boolean isOpen(int x, int y) {
+        if (x < minX || y < minY) return false;
+        if (x > maxX || y > maxY) return false;
+        return !walls[y][x];
+    }
+}
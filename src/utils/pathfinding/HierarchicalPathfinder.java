@@ -0,0 +1,507 @@
+package utils.pathfinding;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Hierarchical pathfinding (HPA*) for large maps.
+ *
+ * The obstacle grid is cut into square clusters. Wherever two neighboring
+ * clusters share a run of open cells along their border, a transition is
+ * placed across it (one in the middle of a narrow run, one at each end of a
+ * wide one). The cells on either side of a transition become nodes of a small
+ * abstract graph, and the cost of crossing each cluster from one of its nodes
+ * to another is worked out ahead of time.
+ *
+ * A query only searches the abstract graph, then fills in the actual cells
+ * between consecutive nodes with small searches that never leave a single
+ * cluster. The paths are close to, but not always exactly, the shortest.
+ *
+ * The pathfinder listens to its ObstacleGrid. When a cell changes, only the
+ * cluster containing it is rebuilt, plus the neighboring cluster on the other
+ * side if the cell lies on a border.
+ *
+ * Diagonal levels work as in Pathfinding. Diagonal steps are used inside
+ * clusters, and borders are always crossed with a cardinal step.
+ *
+ * A HierarchicalPathfinder is not thread safe.
+ * @author Nick Cheng
+ */
+public class HierarchicalPathfinder implements ObstacleListener {
+    /** Runs of open border cells at least this long get a transition at each end */
+    private static final int WIDE_ENTRANCE = 6;
+
+    private static final double INFINITY = Double.MAX_VALUE;
+
+    private final ObstacleGrid grid;
+    private final int clusterSize;
+    private final int diag;
+    private final int rows;
+    private final int cols;
+    private final int clustersX;
+    private final int clustersY;
+
+    /** transitions across the right border of each cluster, as pairs of cells (left, right) */
+    private final int[][] eastTransitions;
+    /** transitions across the bottom border of each cluster, as pairs of cells (top, bottom) */
+    private final int[][] southTransitions;
+    /** abstract nodes inside each cluster */
+    private final Node[][] clusterNodes;
+    /** abstract node at each cell, null for most cells */
+    private final Node[] nodeAt;
+
+    /** searches inside a single cluster */
+    private final GridSearch search = new GridSearch();
+
+    //scratch for the abstract search
+    private final IndexedHeap open;
+    private final double[] gscore;
+    private final int[] parent;
+    private final int[] touched;
+    private final int[] closed;
+    private int generation = 0;
+    private int nextOrder;
+    private final IntList abstractPath = new IntList();
+    private final IntList cellPath = new IntList();
+    /** holds the result of findPath(Point, Point) */
+    private final PathBuffer result = new PathBuffer();
+    private int[] targets = new int[16];
+    private double[] startCosts = new double[16];
+    private double[] goalCosts = new double[16];
+
+    /**
+     * A cell on the side of a transition, which the abstract search can step to.
+     */
+    private static class Node {
+        final int cell;
+        /** position of this node in its cluster's node list */
+        int index;
+        /** other nodes of the same cluster that can be reached, and the cost to reach them */
+        int[] intraTo = new int[0];
+        double[] intraCost = new double[0];
+        /** cells across a border, one cardinal step away */
+        int[] interTo = new int[0];
+
+        Node(int cell) {
+            this.cell = cell;
+        }
+    }
+
+    /**
+     * Builds the cluster graph for a grid and starts listening for changes to it.
+     * @param grid The obstacle grid
+     * @param clusterSize The width and height of each cluster, in cells
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     */
+    public HierarchicalPathfinder(ObstacleGrid grid, int clusterSize, int diag) {
+        if (diag < 0 || diag > 3) {
+            throw new IllegalArgumentException("diag must be between 0..3");
+        }
+        this.grid = grid;
+        this.clusterSize = clusterSize;
+        this.diag = diag;
+        rows = grid.getRows();
+        cols = grid.getCols();
+        clustersX = (cols + clusterSize - 1) / clusterSize;
+        clustersY = (rows + clusterSize - 1) / clusterSize;
+
+        int clusters = clustersX * clustersY;
+        eastTransitions = new int[clusters][];
+        southTransitions = new int[clusters][];
+        clusterNodes = new Node[clusters][0];
+        nodeAt = new Node[rows * cols];
+
+        open = new IndexedHeap(rows * cols);
+        gscore = new double[rows * cols];
+        parent = new int[rows * cols];
+        touched = new int[rows * cols];
+        closed = new int[rows * cols];
+
+        rebuild();
+        grid.addListener(this);
+    }
+
+    /**
+     * Rebuilds the whole cluster graph. Called for you when the grid's
+     * markChanged is called.
+     */
+    public void rebuild() {
+        for (int j = 0; j < clustersY; j++) {
+            for (int i = 0; i < clustersX; i++) {
+                eastTransitions[j * clustersX + i] = findEastTransitions(i, j);
+                southTransitions[j * clustersX + i] = findSouthTransitions(i, j);
+            }
+        }
+        for (int j = 0; j < clustersY; j++) {
+            for (int i = 0; i < clustersX; i++) {
+                rebuildCluster(i, j);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds everything after the whole grid may have changed.
+     */
+    @Override
+    public void gridChanged(ObstacleGrid changed) {
+        rebuild();
+    }
+
+    /**
+     * Rebuilds the cluster holding the changed cell. If the cell is on a
+     * border of its cluster, the transitions across that border and the
+     * cluster on the other side are rebuilt as well.
+     */
+    @Override
+    public void cellChanged(ObstacleGrid changed, int x, int y) {
+        int i = x / clusterSize;
+        int j = y / clusterSize;
+        int c = j * clustersX + i;
+        boolean west = i > 0 && x == i * clusterSize;
+        boolean east = i + 1 < clustersX && x == (i + 1) * clusterSize - 1;
+        boolean north = j > 0 && y == j * clusterSize;
+        boolean south = j + 1 < clustersY && y == (j + 1) * clusterSize - 1;
+
+        if (west) eastTransitions[c - 1] = findEastTransitions(i - 1, j);
+        if (east) eastTransitions[c] = findEastTransitions(i, j);
+        if (north) southTransitions[c - clustersX] = findSouthTransitions(i, j - 1);
+        if (south) southTransitions[c] = findSouthTransitions(i, j);
+
+        rebuildCluster(i, j);
+        if (west) rebuildCluster(i - 1, j);
+        if (east) rebuildCluster(i + 1, j);
+        if (north) rebuildCluster(i, j - 1);
+        if (south) rebuildCluster(i, j + 1);
+    }
+
+    /**
+     * Finds a path through the cluster graph.
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @return A linked list representing path from beginning to end. (path includes endpoint),
+     *      or null if there is no path
+     */
+    public LinkedList<Point> findPath(Point start, Point end) {
+        if (!findPath(start.x, start.y, end.x, end.y, result)) {
+            return null;
+        }
+        return result.toList();
+    }
+
+    /**
+     * Finds a path through the cluster graph and writes it into a buffer.
+     * @param sx The starting column
+     * @param sy The starting row
+     * @param ex The ending column
+     * @param ey The ending row
+     * @param out Cleared, then receives the path (path includes endpoint)
+     * @return Whether there is a path. If not, out is left empty
+     */
+    public boolean findPath(int sx, int sy, int ex, int ey, PathBuffer out) {
+        out.clear();
+        if (grid.isWall(sx, sy) || grid.isWall(ex, ey)) {
+            return false;
+        }
+        boolean[][] walls = grid.getWalls();
+        int s = sy * cols + sx;
+        int g = ey * cols + ex;
+        int sc = clusterOf(s);
+        int gc = clusterOf(g);
+
+        //a path that stays inside one cluster needs no abstract search
+        cellPath.clear();
+        cellPath.add(s);
+        if (sc == gc && refine(s, g)) {
+            search.toPointPath(walls, diag, cellPath, out);
+            return true;
+        }
+
+        startCosts = costsToNodes(s, sc, startCosts);
+        goalCosts = costsToNodes(g, gc, goalCosts);
+        if (!abstractSearch(s, g, sc, gc)) {
+            return false;
+        }
+
+        cellPath.clear();
+        cellPath.add(s);
+        for (int k = 1; k < abstractPath.size(); k++) {
+            int a = abstractPath.get(k - 1);
+            int b = abstractPath.get(k);
+            if (clusterOf(a) != clusterOf(b)) {
+                //a transition, always a single cardinal step
+                cellPath.add(b);
+            } else if (!refine(a, b)) {
+                return false;
+            }
+        }
+        search.toPointPath(walls, diag, cellPath, out);
+        return true;
+    }
+
+    /**
+     * @return The total number of nodes in the abstract graph
+     */
+    public int getNodeCount() {
+        int count = 0;
+        for (Node[] nodes : clusterNodes) {
+            count += nodes.length;
+        }
+        return count;
+    }
+
+    public int getClusterSize() {
+        return clusterSize;
+    }
+
+    /**
+     * A* over the abstract graph, from the start cell through the nodes
+     * to the goal cell. The node sequence is left in abstractPath.
+     */
+    private boolean abstractSearch(int s, int g, int sc, int gc) {
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(touched, 0);
+            Arrays.fill(closed, 0);
+            generation = 0;
+        }
+        generation++;
+        open.clear();
+        nextOrder = 0;
+
+        touch(s);
+        gscore[s] = 0;
+        open.push(s, heuristic(s, g), nextOrder++);
+
+        while (!open.isEmpty()) {
+            int u = open.poll();
+            if (u == g) {
+                abstractPath.clear();
+                for (int v = g; v != -1; v = parent[v]) {
+                    abstractPath.add(v);
+                }
+                abstractPath.reverse(0, abstractPath.size());
+                return true;
+            }
+            closed[u] = generation;
+
+            if (u == s) {
+                Node[] nodes = clusterNodes[sc];
+                for (int k = 0; k < nodes.length; k++) {
+                    if (startCosts[k] != INFINITY) relax(u, nodes[k].cell, startCosts[k], g);
+                }
+            }
+            Node n = nodeAt[u];
+            if (n != null) {
+                for (int k = 0; k < n.intraTo.length; k++) {
+                    relax(u, n.intraTo[k], n.intraCost[k], g);
+                }
+                for (int k = 0; k < n.interTo.length; k++) {
+                    relax(u, n.interTo[k], 1.0, g);
+                }
+                if (clusterOf(u) == gc && goalCosts[n.index] != INFINITY) {
+                    relax(u, g, goalCosts[n.index], g);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void relax(int u, int v, double cost, int g) {
+        touch(v);
+        if (closed[v] == generation) return;
+        double alt = gscore[u] + cost;
+        if (alt < gscore[v]) {
+            gscore[v] = alt;
+            parent[v] = u;
+            double key = alt + heuristic(v, g);
+            if (open.contains(v)) {
+                open.update(v, key);
+            } else {
+                open.push(v, key, nextOrder++);
+            }
+        }
+    }
+
+    private void touch(int id) {
+        if (touched[id] != generation) {
+            touched[id] = generation;
+            gscore[id] = INFINITY;
+            parent[id] = -1;
+        }
+    }
+
+    /**
+     * Octile distance when diagonals are allowed, Manhattan distance otherwise
+     */
+    private double heuristic(int a, int b) {
+        int xdis = Math.abs(a % cols - b % cols);
+        int ydis = Math.abs(a / cols - b / cols);
+        if (diag == 0) {
+            return xdis + ydis;
+        }
+        int diagonal = Math.min(xdis, ydis);
+        return diagonal * GridSearch.DIAGONAL_COST + (Math.max(xdis, ydis) - diagonal);
+    }
+
+    /**
+     * Works out the cost from a cell to every node of its cluster
+     * @param out An array to reuse if it is large enough
+     * @return The costs, indexed like the cluster's node list
+     */
+    private double[] costsToNodes(int cell, int c, double[] out) {
+        Node[] nodes = clusterNodes[c];
+        if (out.length < nodes.length) {
+            out = new double[nodes.length];
+        }
+        if (targets.length < nodes.length) {
+            targets = new int[nodes.length];
+        }
+        for (int k = 0; k < nodes.length; k++) {
+            targets[k] = nodes[k].cell;
+        }
+        int i = c % clustersX;
+        int j = c / clustersX;
+        search.distances(grid.getWalls(), diag != 0, cell % cols, cell / cols,
+                i * clusterSize, j * clusterSize, (i + 1) * clusterSize - 1, (j + 1) * clusterSize - 1,
+                targets, nodes.length, out);
+        return out;
+    }
+
+    /**
+     * Appends the cells between two cells of the same cluster to cellPath
+     * @return Whether they are connected inside the cluster
+     */
+    private boolean refine(int a, int b) {
+        int c = clusterOf(a);
+        int i = c % clustersX;
+        int j = c / clustersX;
+        return search.appendRawPath(grid.getWalls(), diag != 0, a % cols, a / cols, b % cols, b / cols,
+                i * clusterSize, j * clusterSize, (i + 1) * clusterSize - 1, (j + 1) * clusterSize - 1,
+                cellPath);
+    }
+
+    private int clusterOf(int cell) {
+        return (cell / cols / clusterSize) * clustersX + (cell % cols) / clusterSize;
+    }
+
+    /**
+     * Recreates the nodes of a cluster from the transitions on its four
+     * borders, then works out the cost between every pair of them.
+     */
+    private void rebuildCluster(int i, int j) {
+        int c = j * clustersX + i;
+        for (Node n : clusterNodes[c]) {
+            nodeAt[n.cell] = null;
+        }
+
+        List<Node> nodes = new ArrayList<Node>();
+        addSide(nodes, eastTransitions[c], 0);
+        if (i > 0) addSide(nodes, eastTransitions[c - 1], 1);
+        addSide(nodes, southTransitions[c], 0);
+        if (j > 0) addSide(nodes, southTransitions[c - clustersX], 1);
+        Node[] array = nodes.toArray(new Node[nodes.size()]);
+        clusterNodes[c] = array;
+
+        double[] costs = new double[array.length];
+        for (Node n : array) {
+            costs = costsToNodes(n.cell, c, costs);
+            int count = 0;
+            for (int k = 0; k < array.length; k++) {
+                if (array[k] != n && costs[k] != INFINITY) count++;
+            }
+            n.intraTo = new int[count];
+            n.intraCost = new double[count];
+            count = 0;
+            for (int k = 0; k < array.length; k++) {
+                if (array[k] != n && costs[k] != INFINITY) {
+                    n.intraTo[count] = array[k].cell;
+                    n.intraCost[count] = costs[k];
+                    count++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds one side of every transition in a border to a cluster's nodes
+     * @param side 0 for the first cell of each pair, 1 for the second
+     */
+    private void addSide(List<Node> nodes, int[] transitions, int side) {
+        for (int k = 0; k < transitions.length; k += 2) {
+            int mine = transitions[k + side];
+            int other = transitions[k + 1 - side];
+            Node n = nodeAt[mine];
+            if (n == null) {
+                n = new Node(mine);
+                n.index = nodes.size();
+                nodes.add(n);
+                nodeAt[mine] = n;
+            }
+            n.interTo = Arrays.copyOf(n.interTo, n.interTo.length + 1);
+            n.interTo[n.interTo.length - 1] = other;
+        }
+    }
+
+    private int[] findEastTransitions(int i, int j) {
+        int x = (i + 1) * clusterSize - 1;
+        if (x + 1 >= cols) return new int[0];
+        int y = j * clusterSize;
+        return findTransitions(x, y, 1, 0, 0, 1, Math.min(clusterSize, rows - y));
+    }
+
+    private int[] findSouthTransitions(int i, int j) {
+        int y = (j + 1) * clusterSize - 1;
+        if (y + 1 >= rows) return new int[0];
+        int x = i * clusterSize;
+        return findTransitions(x, y, 0, 1, 1, 0, Math.min(clusterSize, cols - x));
+    }
+
+    /**
+     * Walks along a border looking for runs of cells that are open on both
+     * sides, and places transitions across them.
+     * @param x First cell on the near side of the border
+     * @param y First cell on the near side of the border
+     * @param acrossX Step from a near cell to the cell across the border
+     * @param acrossY Step from a near cell to the cell across the border
+     * @param alongX Step along the border
+     * @param alongY Step along the border
+     * @param length Length of the border
+     * @return Pairs of cells (near, far)
+     */
+    private int[] findTransitions(int x, int y, int acrossX, int acrossY, int alongX, int alongY, int length) {
+        IntList found = new IntList();
+        int runStart = -1;
+        for (int k = 0; k <= length; k++) {
+            boolean open = k < length
+                    && !grid.isWall(x + k * alongX, y + k * alongY)
+                    && !grid.isWall(x + k * alongX + acrossX, y + k * alongY + acrossY);
+            if (open && runStart == -1) {
+                runStart = k;
+            } else if (!open && runStart != -1) {
+                int runLength = k - runStart;
+                if (runLength >= WIDE_ENTRANCE) {
+                    addTransition(found, x, y, acrossX, acrossY, alongX, alongY, runStart);
+                    addTransition(found, x, y, acrossX, acrossY, alongX, alongY, k - 1);
+                } else {
+                    addTransition(found, x, y, acrossX, acrossY, alongX, alongY, runStart + runLength / 2);
+                }
+                runStart = -1;
+            }
+        }
+        int[] result = new int[found.size()];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = found.get(k);
+        }
+        return result;
+    }
+
+    private void addTransition(IntList found, int x, int y, int acrossX, int acrossY, int alongX, int alongY, int k) {
+        int nx = x + k * alongX;
+        int ny = y + k * alongY;
+        found.add(ny * cols + nx);
+        found.add((ny + acrossY) * cols + nx + acrossX);
+    }
+}
@@ -0,0 +1,149 @@
+package utils.pathfinding;
+
+import java.awt.Point;
+import java.util.LinkedList;
+
+/**
+ * A path search that can be run a little at a time. Start it with start,
+ * then call step or run once per frame until it is done. It gives the same
+ * path as Pathfinding.findPath would have.
+ *
+ * While the search is still going, getPartialPath gives the path to the
+ * cell nearest to the end found so far, so an agent can start walking
+ * before the whole path is known.
+ *
+ * The grid must not change while a search is running. If it does, start
+ * the search again. An IncrementalSearch has scratch arrays the size of
+ * the grid and can be reused for any number of searches, one at a time.
+ * It is not thread safe.
+ * @author Nick Cheng
+ */
+public class IncrementalSearch {
+    /**
+     * Where a search is up to
+     */
+    public enum Status {
+        /** no search has been started, or it was cancelled */
+        IDLE,
+        /** the search needs more steps */
+        RUNNING,
+        /** a path was found */
+        FOUND,
+        /** there is no path */
+        NOT_FOUND
+    }
+
+    /** Expansions between looks at the clock while running on a time budget */
+    private static final int CLOCK_INTERVAL = 64;
+
+    private final GridSearch search = new GridSearch();
+    private Status status = Status.IDLE;
+
+    /**
+     * Starts a new search, dropping any search that was running.
+     * @param obstacles A 2-D boolean array, true for wall. Indexed [row][column]
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param useHeuristic Heuristic makes it more efficient but less accurate
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     */
+    public void start(boolean[][] obstacles, Point start, Point end, boolean useHeuristic, int diag) {
+        if (diag < 0 || diag > 3) {
+            throw new IllegalArgumentException("diag must be between 0..3");
+        }
+        int result = search.begin(obstacles, start.x, start.y, end.x, end.y, useHeuristic, diag);
+        status = result == GridSearch.EXHAUSTED ? Status.NOT_FOUND : Status.RUNNING;
+    }
+
+    /**
+     * Carries on the search for at most a number of cell expansions.
+     * @param maxExpansions The most cells to expand in this call
+     * @return The status after this call
+     */
+    public Status step(int maxExpansions) {
+        if (status != Status.RUNNING) return status;
+        int result = search.advance(maxExpansions);
+        if (result == GridSearch.REACHED) {
+            status = Status.FOUND;
+        } else if (result == GridSearch.EXHAUSTED) {
+            status = Status.NOT_FOUND;
+        }
+        return status;
+    }
+
+    /**
+     * Carries on the search until it is done or a time budget runs out.
+     * The clock is only checked every few expansions, so the budget can
+     * be overrun by the time those take.
+     * @param budgetNanos The time to spend, in nanoseconds
+     * @return The status after this call
+     */
+    public Status run(long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        while (step(CLOCK_INTERVAL) == Status.RUNNING) {
+            if (System.nanoTime() - deadline >= 0) break;
+        }
+        return status;
+    }
+
+    /**
+     * Stops the search. Its results are no longer available.
+     */
+    public void cancel() {
+        status = Status.IDLE;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isDone() {
+        return status == Status.FOUND || status == Status.NOT_FOUND;
+    }
+
+    /**
+     * @return Number of cells expanded by the current search so far
+     */
+    public int getExpandedCount() {
+        return status == Status.IDLE ? 0 : search.getExpandedCount();
+    }
+
+    /**
+     * Writes the path into a buffer once the search has found one.
+     * @param out Cleared, then receives the path (path includes endpoint)
+     * @return Whether a path was found
+     */
+    public boolean getPath(PathBuffer out) {
+        if (status != Status.FOUND) {
+            out.clear();
+            return false;
+        }
+        search.writePath(out);
+        return true;
+    }
+
+    /**
+     * @return The path as a linked list once the search has found one, or null
+     */
+    public LinkedList<Point> getPath() {
+        PathBuffer out = new PathBuffer();
+        return getPath(out) ? out.toList() : null;
+    }
+
+    /**
+     * Writes the path to the cell nearest to the end that the search has
+     * reached so far. When the search has found the end, this is the path.
+     * @param out Cleared, then receives the path. Empty if nothing has been
+     *      reached yet
+     */
+    public void getPartialPath(PathBuffer out) {
+        if (status == Status.FOUND) {
+            search.writePath(out);
+        } else if (status == Status.IDLE) {
+            out.clear();
+        } else {
+            search.writePartialPath(out);
+        }
+    }
+}
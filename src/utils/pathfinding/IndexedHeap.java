@@ -0,0 +1,207 @@
+package utils.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of integer ids (usually packed cell ids) that knows where
+ * every id sits inside the heap. This lets the priority of a queued id be
+ * changed in logarithmic time (decrease-key or increase-key) instead of
+ * scanning a list for it.
+ *
+ * Every queued id also carries an order number. When two ids have the same
+ * priority, the one with the smaller order number comes out first. The
+ * searches use the order in which cells were queued, which makes the heap
+ * pick exactly the cell a first-in-first-out scan over a list would pick.
+ * @author Nick Cheng
+ */
+class IndexedHeap {
+    /** heap slot to id */
+    private int[] heap;
+    /** id to heap slot, or -1 if the id is not queued */
+    private int[] slot;
+    /** id to priority */
+    private double[] priority;
+    /** id to order number, used to break ties */
+    private int[] order;
+    private int size;
+
+    /**
+     * Creates an empty heap that can hold ids 0 to capacity-1
+     * @param capacity The number of distinct ids
+     */
+    IndexedHeap(int capacity) {
+        heap = new int[Math.max(capacity, 1)];
+        slot = new int[heap.length];
+        priority = new double[heap.length];
+        order = new int[heap.length];
+        Arrays.fill(slot, -1);
+    }
+
+    /**
+     * Makes sure ids 0 to capacity-1 can be queued. Existing
+     * contents are kept.
+     * @param capacity The number of distinct ids
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity <= heap.length) return;
+        int old = heap.length;
+        heap = Arrays.copyOf(heap, capacity);
+        slot = Arrays.copyOf(slot, capacity);
+        priority = Arrays.copyOf(priority, capacity);
+        order = Arrays.copyOf(order, capacity);
+        Arrays.fill(slot, old, capacity, -1);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int id) {
+        return slot[id] != -1;
+    }
+
+    /**
+     * The id with the smallest priority, without removing it.
+     * PRECONDITION: heap is not empty
+     */
+    int peek() {
+        return heap[0];
+    }
+
+    double peekPriority() {
+        return priority[heap[0]];
+    }
+
+    double priorityOf(int id) {
+        return priority[id];
+    }
+
+    /**
+     * Removes and returns the id with the smallest priority.
+     * PRECONDITION: heap is not empty
+     */
+    int poll() {
+        int top = heap[0];
+        removeAt(0);
+        return top;
+    }
+
+    /**
+     * Adds an id to the heap.
+     * PRECONDITION: the id is not already queued
+     * @param id The id to add
+     * @param p Its priority
+     * @param o Its order number for breaking ties
+     */
+    void push(int id, double p, int o) {
+        priority[id] = p;
+        order[id] = o;
+        heap[size] = id;
+        slot[id] = size;
+        size++;
+        siftUp(size - 1);
+    }
+
+    /**
+     * Changes the priority of a queued id, moving it up or
+     * down the heap as needed.
+     */
+    void update(int id, double p) {
+        double old = priority[id];
+        priority[id] = p;
+        if (p < old) {
+            siftUp(slot[id]);
+        } else if (p > old) {
+            siftDown(slot[id]);
+        }
+    }
+
+    /**
+     * Changes the tie-breaking order number of a queued id.
+     */
+    void reorder(int id, int o) {
+        int old = order[id];
+        order[id] = o;
+        if (o < old) {
+            siftUp(slot[id]);
+        } else if (o > old) {
+            siftDown(slot[id]);
+        }
+    }
+
+    /**
+     * Removes an id from the heap if it is queued
+     */
+    void remove(int id) {
+        int s = slot[id];
+        if (s != -1) removeAt(s);
+    }
+
+    /**
+     * Empties the heap. Only the queued ids are touched, so this is
+     * cheap no matter how large the capacity is.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            slot[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void removeAt(int s) {
+        int id = heap[s];
+        slot[id] = -1;
+        size--;
+        if (s == size) return;
+        int last = heap[size];
+        heap[s] = last;
+        slot[last] = s;
+        siftDown(s);
+        siftUp(slot[last]);
+    }
+
+    /** Does id a come out of the heap before id b? */
+    private boolean before(int a, int b) {
+        double pa = priority[a];
+        double pb = priority[b];
+        return pa < pb || (pa == pb && order[a] < order[b]);
+    }
+
+    private void siftUp(int s) {
+        int id = heap[s];
+        while (s > 0) {
+            int parent = (s - 1) >>> 1;
+            int p = heap[parent];
+            if (!before(id, p)) break;
+            heap[s] = p;
+            slot[p] = s;
+            s = parent;
+        }
+        heap[s] = id;
+        slot[id] = s;
+    }
+
+    private void siftDown(int s) {
+        int id = heap[s];
+        int half = size >>> 1;
+        while (s < half) {
+            int child = 2 * s + 1;
+            int c = heap[child];
+            int right = child + 1;
+            if (right < size && before(heap[right], c)) {
+                child = right;
+                c = heap[child];
+            }
+            if (!before(c, id)) break;
+            heap[s] = c;
+            slot[c] = s;
+            s = child;
+        }
+        heap[s] = id;
+        slot[id] = s;
+    }
+}
@@ -0,0 +1,48 @@
+package utils.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints, used for cell id sequences so
+ * that building a path does not box every cell into an Integer.
+ * @author Nick Cheng
+ */
+class IntList {
+    private int[] data;
+    private int size;
+
+    IntList() {
+        data = new int[16];
+    }
+
+    void add(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = value;
+    }
+
+    int get(int i) {
+        return data[i];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Reverses the order of the elements from index from (inclusive)
+     * to index to (exclusive)
+     */
+    void reverse(int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int t = data[i];
+            data[i] = data[j];
+            data[j] = t;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package utils.pathfinding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An obstacle grid that tells its listeners whenever a cell changes.
+ * It wraps the same boolean[][] (true for wall, indexed [row][column])
+ * that Pathfinding takes, without copying it, so getWalls can still be
+ * passed to any of the Pathfinding methods.
+ *
+ * Structures built from the grid, like the HierarchicalPathfinder, are
+ * only kept up to date if cells are changed through setWall. Writing to
+ * the array directly goes unnoticed until markChanged is called.
+ *
+ * Every change also bumps a version number, so anything holding on to
+ * results worked out from the grid can tell whether they are stale.
+ * @author Nick Cheng
+ */
+public class ObstacleGrid {
+    private final boolean[][] walls;
+    private final int rows;
+    private final int cols;
+    private final List<ObstacleListener> listeners = new ArrayList<ObstacleListener>();
+    private int version = 0;
+
+    /**
+     * Wraps an existing obstacle array
+     * @param walls A 2-D boolean array, true for wall. Indexed [row][column]
+     */
+    public ObstacleGrid(boolean[][] walls) {
+        this.walls = walls;
+        rows = walls.length;
+        cols = walls[0].length;
+    }
+
+    /**
+     * Creates an empty grid with no walls
+     * @param cols Number of columns
+     * @param rows Number of rows
+     */
+    public ObstacleGrid(int cols, int rows) {
+        this(new boolean[rows][cols]);
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * A number that changes every time the grid does
+     * @return The current version of the grid
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * The underlying array, for use with the Pathfinding methods.
+     * Do not write to it directly, use setWall.
+     * @return The obstacle array, indexed [row][column]
+     */
+    public boolean[][] getWalls() {
+        return walls;
+    }
+
+    /**
+     * Is the cell at (x,y) a wall? Cells off the grid count as walls.
+     * @param x The column
+     * @param y The row
+     * @return Whether it is a wall
+     */
+    public boolean isWall(int x, int y) {
+        if (x < 0 || y < 0 || x >= cols || y >= rows) return true;
+        return walls[y][x];
+    }
+
+    /**
+     * Makes a cell a wall or open, and tells the listeners if it changed
+     * @param x The column
+     * @param y The row
+     * @param wall true for wall, false for open
+     */
+    public void setWall(int x, int y, boolean wall) {
+        if (walls[y][x] == wall) return;
+        walls[y][x] = wall;
+        version++;
+        for (ObstacleListener l : listeners) {
+            l.cellChanged(this, x, y);
+        }
+    }
+
+    /**
+     * Tells the listeners that the whole grid may have changed. Call
+     * this after writing to the obstacle array directly.
+     */
+    public void markChanged() {
+        version++;
+        for (ObstacleListener l : listeners) {
+            l.gridChanged(this);
+        }
+    }
+
+    public void addListener(ObstacleListener l) {
+        listeners.add(l);
+    }
+
+    public void removeListener(ObstacleListener l) {
+        listeners.remove(l);
+    }
+}
@@ -0,0 +1,25 @@
+package utils.pathfinding;
+
+/**
+ * Something that needs to know when a cell of an ObstacleGrid
+ * turns into a wall or stops being one, so it can update whatever
+ * it has worked out from the old grid.
+ * @author Nick Cheng
+ */
+public interface ObstacleListener {
+
+    /**
+     * Called after a cell of the grid has changed
+     * @param grid The grid that changed
+     * @param x The column of the cell
+     * @param y The row of the cell
+     */
+    void cellChanged(ObstacleGrid grid, int x, int y);
+
+    /**
+     * Called when the grid may have changed anywhere, after the
+     * obstacle array was written to directly
+     * @param grid The grid that changed
+     */
+    void gridChanged(ObstacleGrid grid);
+}
@@ -0,0 +1,110 @@
+package utils.pathfinding;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * A growable path of grid cells, stored as packed (x,y) pairs in a single
+ * int array. The searches can write their results into a PathBuffer instead
+ * of building a new LinkedList of Points, so a caller that keeps one buffer
+ * around and reuses it for every query creates no garbage at all once the
+ * buffer has grown to fit its longest path.
+ *
+ * Like the linked list paths, a path does not include the start and does
+ * include the end.
+ * @author Nick Cheng
+ */
+public class PathBuffer {
+    /** x0, y0, x1, y1, ... */
+    private int[] data;
+    /** number of points */
+    private int size;
+
+    public PathBuffer() {
+        this(32);
+    }
+
+    /**
+     * @param capacity Number of points to make room for up front
+     */
+    public PathBuffer(int capacity) {
+        data = new int[Math.max(capacity, 1) * 2];
+    }
+
+    /** @return Number of points in the path */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** @return The column of the i-th point */
+    public int getX(int i) {
+        if (i >= size) throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        return data[i * 2];
+    }
+
+    /** @return The row of the i-th point */
+    public int getY(int i) {
+        if (i >= size) throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        return data[i * 2 + 1];
+    }
+
+    /**
+     * The backing array. Point i is at [2i] (x) and [2i+1] (y); only the
+     * first size() * 2 entries mean anything. The array is replaced when
+     * the buffer grows, so do not hold on to it across searches.
+     * @return The packed coordinates
+     */
+    public int[] getData() {
+        return data;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Appends a point to the end of the path
+     * @param x The column
+     * @param y The row
+     */
+    public void add(int x, int y) {
+        if (size * 2 == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size * 2] = x;
+        data[size * 2 + 1] = y;
+        size++;
+    }
+
+    /**
+     * Copies the path into a new linked list, as returned by Pathfinding.findPath
+     * @return A linked list of the points, in order
+     */
+    public LinkedList<Point> toList() {
+        LinkedList<Point> list = new LinkedList<Point>();
+        for (int i = 0; i < size; i++) {
+            list.add(new Point(data[i * 2], data[i * 2 + 1]));
+        }
+        return list;
+    }
+
+    /**
+     * Reverses the order of the points from index from (inclusive)
+     * to index to (exclusive)
+     */
+    void reverse(int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int tx = data[i * 2];
+            int ty = data[i * 2 + 1];
+            data[i * 2] = data[j * 2];
+            data[i * 2 + 1] = data[j * 2 + 1];
+            data[j * 2] = tx;
+            data[j * 2 + 1] = ty;
+        }
+    }
+}
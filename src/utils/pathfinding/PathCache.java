@@ -0,0 +1,409 @@
+package utils.pathfinding;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded cache of paths found on one ObstacleGrid, for games that ask for
+ * the same paths over and over while the map rarely changes.
+ *
+ * Paths are looked up by start, end, heuristic flag and diagonal level. When
+ * the cache is full, the path that was used least recently is dropped.
+ *
+ * The cache listens to the grid. When a wall is added, only the cached
+ * paths that pass through that cell or one of its eight neighbors are
+ * dropped (a wall next to a path can block a diagonal step). When a wall is
+ * removed, a path is dropped if a route through the opened cell could
+ * possibly be shorter, and every cached "no path" answer is dropped. The
+ * cache also remembers the grid version it last caught up with, and throws
+ * everything away if the grid was changed in a way it was not told about.
+ *
+ * All methods are synchronized, so one cache can be shared between threads.
+ * @author Nick Cheng
+ */
+public class PathCache implements ObstacleListener {
+    /** Cached paths are indexed by square blocks of cells this wide */
+    private static final int BLOCK = 8;
+
+    private final ObstacleGrid grid;
+    private final Pathfinder pathfinder;
+    private final int capacity;
+    private final int blocksX;
+
+    /** the grid version the cached paths are valid for */
+    private int version;
+
+    /** least recently used first */
+    private final LinkedHashMap<Key, CachedPath> entries;
+    /** block id to the cached paths passing near it */
+    private final Map<Integer, Set<CachedPath>> blocks = new HashMap<Integer, Set<CachedPath>>();
+    /** cached answers with no path */
+    private final Set<CachedPath> unreachable = new HashSet<CachedPath>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /** holds the result of findPath(Point, Point, boolean, int) */
+    private final PathBuffer result = new PathBuffer();
+
+    /**
+     * What a path is cached under
+     */
+    private static class Key {
+        final int start;
+        final int end;
+        final boolean useHeuristic;
+        final int diag;
+
+        Key(int start, int end, boolean useHeuristic, int diag) {
+            this.start = start;
+            this.end = end;
+            this.useHeuristic = useHeuristic;
+            this.diag = diag;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) obj;
+            return start == k.start && end == k.end && useHeuristic == k.useHeuristic && diag == k.diag;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = start * 31 + end;
+            h = h * 31 + diag;
+            return useHeuristic ? h : ~h;
+        }
+    }
+
+    /**
+     * A cached path, kept as cell ids
+     */
+    private static class CachedPath {
+        final Key key;
+        /** cells of the path after the start, or null for no path */
+        final int[] cells;
+        /** cost of walking the path */
+        final double cost;
+        /** blocks this entry is indexed under */
+        final List<Integer> blockIds = new ArrayList<Integer>();
+
+        CachedPath(Key key, int[] cells, double cost) {
+            this.key = key;
+            this.cells = cells;
+            this.cost = cost;
+        }
+    }
+
+    /**
+     * Creates a cache for a grid and starts listening for changes to it.
+     * @param grid The obstacle grid the paths are found on
+     * @param capacity The largest number of paths to keep
+     */
+    public PathCache(ObstacleGrid grid, int capacity) {
+        this(grid, capacity, new Pathfinder());
+    }
+
+    /**
+     * Creates a cache for a grid and starts listening for changes to it.
+     * @param grid The obstacle grid the paths are found on
+     * @param capacity The largest number of paths to keep
+     * @param pathfinder Finds the paths that are not cached yet
+     */
+    public PathCache(ObstacleGrid grid, int capacity, Pathfinder pathfinder) {
+        this.grid = grid;
+        this.capacity = capacity;
+        this.pathfinder = pathfinder;
+        blocksX = (grid.getCols() + BLOCK - 1) / BLOCK;
+        version = grid.getVersion();
+        entries = new LinkedHashMap<Key, CachedPath>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedPath> eldest) {
+                if (size() > PathCache.this.capacity) {
+                    unindex(eldest.getValue());
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        grid.addListener(this);
+    }
+
+    /**
+     * Finds a path, from the cache if possible. Takes the same arguments
+     * as Pathfinding.findPath, minus the grid.
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param useHeuristic Heuristic makes it more efficient but less accurate
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @return A new linked list representing path from beginning to end (path includes
+     *      endpoint), or null if there is no path. The caller may change it freely.
+     */
+    public synchronized LinkedList<Point> findPath(Point start, Point end, boolean useHeuristic, int diag) {
+        if (!findPath(start.x, start.y, end.x, end.y, useHeuristic, diag, result)) {
+            return null;
+        }
+        return result.toList();
+    }
+
+    /**
+     * Finds a path, from the cache if possible, and writes it into a buffer.
+     * @param sx The starting column
+     * @param sy The starting row
+     * @param ex The ending column
+     * @param ey The ending row
+     * @param useHeuristic Heuristic makes it more efficient but less accurate
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @param out Cleared, then receives the path (path includes endpoint)
+     * @return Whether there is a path
+     */
+    public synchronized boolean findPath(int sx, int sy, int ex, int ey,
+            boolean useHeuristic, int diag, PathBuffer out) {
+        int cols = grid.getCols();
+        if (!inGrid(sx, sy) || !inGrid(ex, ey) || diag < 0 || diag > 3) {
+            misses++;
+            return pathfinder.findPath(grid.getWalls(), sx, sy, ex, ey, useHeuristic, diag, out);
+        }
+        if (grid.getVersion() != version) {
+            clear();
+        }
+
+        Key key = new Key(sy * cols + sx, ey * cols + ex, useHeuristic, diag);
+        CachedPath entry = entries.get(key);
+        if (entry != null) {
+            hits++;
+            out.clear();
+            if (entry.cells == null) return false;
+            for (int cell : entry.cells) {
+                out.add(cell % cols, cell / cols);
+            }
+            return true;
+        }
+
+        misses++;
+        boolean found = pathfinder.findPath(grid.getWalls(), sx, sy, ex, ey, useHeuristic, diag, out);
+        int[] cells = null;
+        double cost = 0;
+        if (found) {
+            cells = new int[out.size()];
+            int px = sx;
+            int py = sy;
+            for (int i = 0; i < cells.length; i++) {
+                int x = out.getX(i);
+                int y = out.getY(i);
+                cells[i] = y * cols + x;
+                cost += (x != px && y != py) ? GridSearch.DIAGONAL_COST : 1.0;
+                px = x;
+                py = y;
+            }
+        }
+        entry = new CachedPath(key, cells, cost);
+        entries.put(key, entry);
+        index(entry);
+        return found;
+    }
+
+    /**
+     * Drops the cached paths that the changed cell could affect.
+     */
+    @Override
+    public synchronized void cellChanged(ObstacleGrid changed, int x, int y) {
+        if (grid.getVersion() != version + 1) {
+            //missed a change somewhere, so nothing can be trusted
+            clear();
+            return;
+        }
+        version = grid.getVersion();
+
+        int cols = grid.getCols();
+        if (grid.isWall(x, y)) {
+            Set<CachedPath> near = blocks.get(blockOf(x, y));
+            if (near == null) return;
+            for (CachedPath e : new ArrayList<CachedPath>(near)) {
+                if (passesNear(e, x, y, cols)) {
+                    drop(e);
+                }
+            }
+        } else {
+            //the opened cell may be a shortcut for any path, or connect
+            //places that could not be reached before
+            for (CachedPath e : new ArrayList<CachedPath>(entries.values())) {
+                if (e.cells == null || passesNear(e, x, y, cols) || mayShortcut(e, x, y, cols)) {
+                    drop(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops everything after the whole grid may have changed.
+     */
+    @Override
+    public synchronized void gridChanged(ObstacleGrid changed) {
+        clear();
+    }
+
+    /**
+     * Drops every cached path. The statistics are kept.
+     */
+    public synchronized void clear() {
+        invalidations += entries.size();
+        entries.clear();
+        blocks.clear();
+        unreachable.clear();
+        version = grid.getVersion();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** @return Number of lookups answered from the cache */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /** @return Number of lookups that had to search */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /** @return Number of paths dropped to make room */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /** @return Number of paths dropped because the grid changed */
+    public synchronized long getInvalidationCount() {
+        return invalidations;
+    }
+
+    /**
+     * Sets all of the counters back to 0
+     */
+    public synchronized void resetStats() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+        invalidations = 0;
+    }
+
+    private void drop(CachedPath e) {
+        entries.remove(e.key);
+        unindex(e);
+        invalidations++;
+    }
+
+    /**
+     * Does the path of an entry, or its start, lie within one cell of (x,y)?
+     */
+    private boolean passesNear(CachedPath e, int x, int y, int cols) {
+        if (isNear(e.key.start, x, y, cols)) return true;
+        if (e.cells == null) return false;
+        for (int cell : e.cells) {
+            if (isNear(cell, x, y, cols)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Could a path from the start of an entry through (x,y) to its end be
+     * shorter than the cached one? Uses the cheapest possible cost of each
+     * half, ignoring walls.
+     */
+    private boolean mayShortcut(CachedPath e, int x, int y, int cols) {
+        double bound = leastCost(e.key.start % cols, e.key.start / cols, x, y, e.key.diag)
+                + leastCost(x, y, e.key.end % cols, e.key.end / cols, e.key.diag);
+        return bound < e.cost;
+    }
+
+    private static double leastCost(int x1, int y1, int x2, int y2, int diag) {
+        int dx = Math.abs(x1 - x2);
+        int dy = Math.abs(y1 - y2);
+        if (diag == 0 || diag == 1) {
+            //level 1 paths are walked with every diagonal filled in
+            return dx + dy;
+        }
+        return Math.max(dx, dy) + (GridSearch.DIAGONAL_COST - 1) * Math.min(dx, dy);
+    }
+
+    private boolean isNear(int cell, int x, int y, int cols) {
+        return Math.abs(cell % cols - x) <= 1 && Math.abs(cell / cols - y) <= 1;
+    }
+
+    /**
+     * Files an entry under every block within one cell of its path
+     */
+    private void index(CachedPath e) {
+        int cols = grid.getCols();
+        Set<Integer> ids = new HashSet<Integer>();
+        addBlocksAround(ids, e.key.start, cols);
+        if (e.cells == null) {
+            unreachable.add(e);
+        } else {
+            for (int cell : e.cells) {
+                addBlocksAround(ids, cell, cols);
+            }
+        }
+        for (Integer id : ids) {
+            Set<CachedPath> set = blocks.get(id);
+            if (set == null) {
+                set = new HashSet<CachedPath>();
+                blocks.put(id, set);
+            }
+            set.add(e);
+            e.blockIds.add(id);
+        }
+    }
+
+    private void unindex(CachedPath e) {
+        for (Integer id : e.blockIds) {
+            Set<CachedPath> set = blocks.get(id);
+            if (set != null) {
+                set.remove(e);
+                if (set.isEmpty()) blocks.remove(id);
+            }
+        }
+        e.blockIds.clear();
+        unreachable.remove(e);
+    }
+
+    private void addBlocksAround(Set<Integer> ids, int cell, int cols) {
+        int x = cell % cols;
+        int y = cell / cols;
+        for (int by = Math.max(y - 1, 0) / BLOCK; by <= (y + 1) / BLOCK; by++) {
+            for (int bx = Math.max(x - 1, 0) / BLOCK; bx <= (x + 1) / BLOCK; bx++) {
+                ids.add(by * blocksX + bx);
+            }
+        }
+    }
+
+    private int blockOf(int x, int y) {
+        return (y / BLOCK) * blocksX + x / BLOCK;
+    }
+
+    private boolean inGrid(int x, int y) {
+        return x >= 0 && y >= 0 && x < grid.getCols() && y < grid.getRows();
+    }
+}
@@ -0,0 +1,49 @@
+package utils.pathfinding;
+
+import java.awt.Point;
+
+/**
+ * A single path query, for use with Pathfinder.findPaths which
+ * answers many of them at once. The fields mean the same as the
+ * arguments of Pathfinding.findPath.
+ * @author Nick Cheng
+ */
+public class PathRequest {
+    /** A 2-D boolean array, true for wall. Indexed [row][column] */
+    public final boolean[][] obstacles;
+    /** A starting point (x,y) i.e. (column,row) */
+    public final Point start;
+    /** An ending point (x,y) i.e. (column,row) */
+    public final Point end;
+    /** Heuristic makes it more efficient but less accurate */
+    public final boolean useHeuristic;
+    /** An integer 0,1,2,3 representing level of diagonal acceptance */
+    public final int diag;
+
+    /**
+     * Creates a request with all options available.
+     * @param obstacles A 2-D boolean array, true for wall
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param useHeuristic Heuristic makes it more efficient but less accurate
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     */
+    public PathRequest(boolean[][] obstacles, Point start, Point end, boolean useHeuristic, int diag) {
+        this.obstacles = obstacles;
+        this.start = start;
+        this.end = end;
+        this.useHeuristic = useHeuristic;
+        this.diag = diag;
+    }
+
+    /**
+     * Creates a request that uses heuristic and no diagonalization.
+     * @param obstacles A 2-D boolean array, true for wall
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     */
+    public PathRequest(boolean[][] obstacles, Point start, Point end) {
+        this(obstacles, start, end, true, 0);
+    }
+}
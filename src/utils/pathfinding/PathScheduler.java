@@ -0,0 +1,204 @@
+package utils.pathfinding;
+
+import java.awt.Point;
+import java.util.LinkedList;
+
+/**
+ * Spreads path searches over several frames so that no single frame has to
+ * wait for a long search. Submit requests at any time and get a PathTicket
+ * back, then call update once per frame (from enterFrame, say). Each update
+ * works on the pending requests until its time budget for the frame is used
+ * up, and the unfinished ones carry on in the next frame.
+ *
+ * A few searches are worked on at once, taking turns in small slices, so one
+ * long search does not hold up all the short ones queued behind it. Each of
+ * those searches keeps its own scratch arrays the size of the grid.
+ *
+ * The grids must not change while their requests are being worked on.
+ * Submitting, updating and reading tickets may happen on different threads.
+ * @author Nick Cheng
+ */
+public class PathScheduler {
+    /** Cell expansions a search gets before the next one takes its turn */
+    private static final int SLICE = 256;
+
+    private long frameBudget;
+    private final IncrementalSearch[] searches;
+    private final PathTicket[] running;
+    private final LinkedList<PathTicket> waiting = new LinkedList<PathTicket>();
+    private int turn;
+    private int frame;
+
+    private long lastUpdateNanos;
+    private long completed;
+
+    /**
+     * Creates a scheduler that works on up to 4 searches at a time.
+     * @param frameBudgetNanos The time update may spend in each frame, in nanoseconds
+     */
+    public PathScheduler(long frameBudgetNanos) {
+        this(frameBudgetNanos, 4);
+    }
+
+    /**
+     * @param frameBudgetNanos The time update may spend in each frame, in nanoseconds
+     * @param maxActive The number of searches worked on at a time
+     */
+    public PathScheduler(long frameBudgetNanos, int maxActive) {
+        if (maxActive < 1) {
+            throw new IllegalArgumentException("maxActive must be at least 1");
+        }
+        this.frameBudget = frameBudgetNanos;
+        searches = new IncrementalSearch[maxActive];
+        running = new PathTicket[maxActive];
+        for (int i = 0; i < maxActive; i++) {
+            searches[i] = new IncrementalSearch();
+        }
+    }
+
+    /**
+     * Queues a request. The path will be worked on in the following updates.
+     * @param request The path to find
+     * @return A ticket to check for the path
+     */
+    public synchronized PathTicket submit(PathRequest request) {
+        if (request.diag < 0 || request.diag > 3) {
+            throw new IllegalArgumentException("diag must be between 0..3");
+        }
+        PathTicket ticket = new PathTicket(request);
+        waiting.add(ticket);
+        return ticket;
+    }
+
+    /**
+     * Queues a request. The arguments are the same as Pathfinding.findPath.
+     * @return A ticket to check for the path
+     */
+    public PathTicket submit(boolean[][] obstacles, Point start, Point end, boolean useHeuristic, int diag) {
+        return submit(new PathRequest(obstacles, start, end, useHeuristic, diag));
+    }
+
+    /**
+     * Works on the pending requests for up to one frame's budget. At least
+     * one slice of work is done on every call, however small the budget.
+     */
+    public synchronized void update() {
+        long begin = System.nanoTime();
+        long deadline = begin + frameBudget;
+        frame++;
+
+        do {
+            fillSlots();
+            int slot = nextSlot();
+            if (slot == -1) break;
+
+            PathTicket ticket = running[slot];
+            IncrementalSearch search = searches[slot];
+            synchronized (ticket) {
+                if (ticket.cancelled) {
+                    search.cancel();
+                    running[slot] = null;
+                    continue;
+                }
+                if (ticket.lastFrame != frame) {
+                    ticket.lastFrame = frame;
+                    ticket.frames++;
+                }
+            }
+
+            IncrementalSearch.Status status = search.step(SLICE);
+            if (status != IncrementalSearch.Status.RUNNING) {
+                synchronized (ticket) {
+                    ticket.expanded = search.getExpandedCount();
+                    if (search.getPath(ticket.path)) {
+                        ticket.partial.clear();
+                    } else {
+                        search.getPartialPath(ticket.partial);
+                    }
+                    if (!ticket.cancelled) ticket.status = status;
+                }
+                search.cancel();
+                running[slot] = null;
+                completed++;
+            }
+        } while (System.nanoTime() - deadline < 0);
+
+        //once a frame rather than every slice, as the path can be long
+        for (int i = 0; i < running.length; i++) {
+            PathTicket ticket = running[i];
+            if (ticket == null) continue;
+            synchronized (ticket) {
+                ticket.expanded = searches[i].getExpandedCount();
+                searches[i].getPartialPath(ticket.partial);
+            }
+        }
+
+        lastUpdateNanos = System.nanoTime() - begin;
+    }
+
+    /**
+     * Starts waiting requests in any free slots
+     */
+    private void fillSlots() {
+        for (int i = 0; i < running.length && !waiting.isEmpty(); i++) {
+            if (running[i] != null) continue;
+            PathTicket ticket = waiting.removeFirst();
+            PathRequest r = ticket.request;
+            synchronized (ticket) {
+                if (ticket.cancelled) {
+                    i--;
+                    continue;
+                }
+            }
+            searches[i].start(r.obstacles, r.start, r.end, r.useHeuristic, r.diag);
+            running[i] = ticket;
+        }
+    }
+
+    /**
+     * The next busy slot after the last one that had a turn
+     * @return The slot, or -1 if there is nothing to do
+     */
+    private int nextSlot() {
+        for (int k = 1; k <= running.length; k++) {
+            int i = (turn + k) % running.length;
+            if (running[i] != null) {
+                turn = i;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Number of requests not finished yet, including the ones being worked on
+     */
+    public synchronized int getPendingCount() {
+        int count = waiting.size();
+        for (PathTicket t : running) {
+            if (t != null) count++;
+        }
+        return count;
+    }
+
+    /** @return Number of requests finished so far */
+    public synchronized long getCompletedCount() {
+        return completed;
+    }
+
+    /** @return The time the last update took, in nanoseconds */
+    public synchronized long getLastUpdateNanos() {
+        return lastUpdateNanos;
+    }
+
+    public synchronized long getFrameBudget() {
+        return frameBudget;
+    }
+
+    /**
+     * @param frameBudgetNanos The time update may spend in each frame, in nanoseconds
+     */
+    public synchronized void setFrameBudget(long frameBudgetNanos) {
+        frameBudget = frameBudgetNanos;
+    }
+}
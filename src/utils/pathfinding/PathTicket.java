@@ -0,0 +1,115 @@
+package utils.pathfinding;
+
+import java.awt.Point;
+import java.util.LinkedList;
+
+/**
+ * A path that has been asked for from a PathScheduler. It fills in over the
+ * following frames; check isDone, then read the path.
+ * @author Nick Cheng
+ */
+public class PathTicket {
+    final PathRequest request;
+    IncrementalSearch.Status status = IncrementalSearch.Status.RUNNING;
+    final PathBuffer path = new PathBuffer();
+    /** path to the cell nearest the end so far, updated every frame */
+    final PathBuffer partial = new PathBuffer();
+    /** cells expanded so far, updated every frame */
+    int expanded;
+    boolean cancelled;
+    /** frames that have worked on this request so far */
+    int frames;
+    /** the last frame that worked on this request */
+    int lastFrame = -1;
+
+    PathTicket(PathRequest request) {
+        this.request = request;
+    }
+
+    public PathRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * @return RUNNING while waiting or searching, then FOUND or NOT_FOUND.
+     *      IDLE if cancelled
+     */
+    public synchronized IncrementalSearch.Status getStatus() {
+        return status;
+    }
+
+    public synchronized boolean isDone() {
+        return status == IncrementalSearch.Status.FOUND || status == IncrementalSearch.Status.NOT_FOUND;
+    }
+
+    /**
+     * @return The path from beginning to end (path includes endpoint), or
+     *      null if it is not done or there is no path
+     */
+    public synchronized LinkedList<Point> getPath() {
+        if (status != IncrementalSearch.Status.FOUND) return null;
+        return path.toList();
+    }
+
+    /**
+     * Copies the path into a buffer.
+     * @param out Cleared, then receives the path
+     * @return Whether a path was found
+     */
+    public synchronized boolean getPath(PathBuffer out) {
+        out.clear();
+        if (status != IncrementalSearch.Status.FOUND) return false;
+        for (int i = 0; i < path.size(); i++) {
+            out.add(path.getX(i), path.getY(i));
+        }
+        return true;
+    }
+
+    /**
+     * The best path found so far: the path to the cell nearest the end
+     * while searching or if there is no path, then the whole path once it
+     * is found. An agent can start walking along it before the search is
+     * done.
+     * @param out Cleared, then receives the path (empty if the search has
+     *      not started)
+     */
+    public synchronized void getPartialPath(PathBuffer out) {
+        out.clear();
+        PathBuffer from = status == IncrementalSearch.Status.FOUND ? path : partial;
+        for (int i = 0; i < from.size(); i++) {
+            out.add(from.getX(i), from.getY(i));
+        }
+    }
+
+    /**
+     * @return The best path found so far as a linked list, see
+     *      getPartialPath(PathBuffer)
+     */
+    public synchronized LinkedList<Point> getPartialPath() {
+        return status == IncrementalSearch.Status.FOUND ? path.toList() : partial.toList();
+    }
+
+    /**
+     * @return The number of cells the search has expanded so far
+     */
+    public synchronized int getExpandedCount() {
+        return expanded;
+    }
+
+    /**
+     * @return The number of frames that spent time on this request
+     */
+    public synchronized int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Tells the scheduler to stop working on this request.
+     */
+    public synchronized void cancel() {
+        if (!isDone()) {
+            cancelled = true;
+            status = IncrementalSearch.Status.IDLE;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package utils.pathfinding;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A thread safe pathfinder. It gives every thread that uses it its own
+ * GridSearch, so any number of threads can ask it for paths at the same
+ * time. The obstacle grids are only read, never written. The static
+ * Pathfinding methods hold no state themselves and hand their searches
+ * to a shared Pathfinder.
+ *
+ * It can also answer a whole batch of requests at once with findPaths,
+ * which spreads the requests over the cores of the machine using a
+ * ForkJoinPool.
+ *
+ * See Pathfinding for a description of the diagonal levels.
+ * @author Nick Cheng
+ */
+public class Pathfinder {
+    /**
+     * Batches are split into chunks of at most this many requests
+     * before being handed to separate worker threads
+     */
+    private static final int BATCH_CHUNK = 4;
+
+    /** one search engine per thread, created the first time a thread asks */
+    private final ThreadLocal<GridSearch> searches = new ThreadLocal<GridSearch>() {
+        @Override
+        protected GridSearch initialValue() {
+            return new GridSearch();
+        }
+    };
+
+    private ForkJoinPool pool;
+
+    /**
+     * Creates a pathfinder. Batches will run on a pool with one
+     * worker per processor, created the first time it is needed.
+     */
+    public Pathfinder() {
+    }
+
+    /**
+     * Creates a pathfinder that runs batches on the given pool.
+     * @param pool The pool to run findPaths on
+     */
+    public Pathfinder(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Default path-finding method with all options available.
+     * @param obstacles A 2-D boolean array, true for wall. Indexed [row][column]
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param useHeuristic Heuristic makes it more efficient but less accurate
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @return A linked list representing path from beginning to end. (path includes endpoint)
+     */
+    public LinkedList<Point> findPath(boolean[][] obstacles, Point start, Point end, boolean useHeuristic, int diag) {
+        if (diag < 0 || diag > 3) {
+            System.out.println("diag must be between 0..3");
+            return null;
+        }
+        return searches.get().findPath(obstacles, start, end, useHeuristic, diag);
+    }
+
+    /**
+     * Finds a path with Jump Point Search. This expands far fewer cells than
+     * findPath on large open grids and gives a path of the same shape.
+     * @param obstacles A 2-D boolean array, true for wall. Indexed [row][column]
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @return A linked list representing path from beginning to end. (path includes endpoint)
+     */
+    public LinkedList<Point> findPathJumpPoint(boolean[][] obstacles, Point start, Point end, int diag) {
+        if (diag < 0 || diag > 3) {
+            System.out.println("diag must be between 0..3");
+            return null;
+        }
+        return searches.get().findPathJumpPoint(obstacles, start, end, diag);
+    }
+
+    /**
+     * Finds a path with A* or Dijkstra's algorithm and writes it into a
+     * buffer. Allocates nothing once the calling thread's scratch arrays and
+     * the buffer have grown large enough.
+     * @param obstacles A 2-D boolean array, true for wall. Indexed [row][column]
+     * @param sx The starting column
+     * @param sy The starting row
+     * @param ex The ending column
+     * @param ey The ending row
+     * @param useHeuristic Heuristic makes it more efficient but less accurate
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @param out Cleared, then receives the path (path includes endpoint)
+     * @return Whether there is a path
+     */
+    public boolean findPath(boolean[][] obstacles, int sx, int sy, int ex, int ey,
+            boolean useHeuristic, int diag, PathBuffer out) {
+        if (diag < 0 || diag > 3) {
+            System.out.println("diag must be between 0..3");
+            out.clear();
+            return false;
+        }
+        return searches.get().findPath(obstacles, sx, sy, ex, ey, useHeuristic, diag, out);
+    }
+
+    /**
+     * Finds a path with Jump Point Search and writes it into a buffer.
+     * @param obstacles A 2-D boolean array, true for wall. Indexed [row][column]
+     * @param sx The starting column
+     * @param sy The starting row
+     * @param ex The ending column
+     * @param ey The ending row
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @param out Cleared, then receives the path (path includes endpoint)
+     * @return Whether there is a path
+     */
+    public boolean findPathJumpPoint(boolean[][] obstacles, int sx, int sy, int ex, int ey,
+            int diag, PathBuffer out) {
+        if (diag < 0 || diag > 3) {
+            System.out.println("diag must be between 0..3");
+            out.clear();
+            return false;
+        }
+        return searches.get().findPathJumpPoint(obstacles, sx, sy, ex, ey, diag, out);
+    }
+
+    /**
+     * Answers a single request.
+     * @param request The request to answer
+     * @return A linked list representing path from beginning to end. (path includes endpoint)
+     */
+    public LinkedList<Point> findPath(PathRequest request) {
+        return findPath(request.obstacles, request.start, request.end, request.useHeuristic, request.diag);
+    }
+
+    /**
+     * Answers many requests in parallel. This blocks until every
+     * request has been answered.
+     * @param requests The requests to answer
+     * @return The paths, in the same order as the requests. A path is null
+     *      where its request has no path.
+     */
+    public List<LinkedList<Point>> findPaths(List<PathRequest> requests) {
+        PathRequest[] in = requests.toArray(new PathRequest[requests.size()]);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        LinkedList<Point>[] out = new LinkedList[in.length];
+        if (in.length <= BATCH_CHUNK) {
+            for (int i = 0; i < in.length; i++) {
+                out[i] = findPath(in[i]);
+            }
+        } else {
+            getPool().invoke(new BatchTask(in, out, 0, in.length));
+        }
+        return new ArrayList<LinkedList<Point>>(Arrays.asList(out));
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool();
+        }
+        return pool;
+    }
+
+    /**
+     * Splits a range of requests in half until it is small
+     * enough to run on one thread.
+     */
+    @SuppressWarnings("serial")
+    private class BatchTask extends RecursiveAction {
+        private final PathRequest[] in;
+        private final LinkedList<Point>[] out;
+        private final int from;
+        private final int to;
+
+        BatchTask(PathRequest[] in, LinkedList<Point>[] out, int from, int to) {
+            this.in = in;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_CHUNK) {
+                for (int i = from; i < to; i++) {
+                    out[i] = findPath(in[i]);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BatchTask(in, out, from, mid), new BatchTask(in, out, mid, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package view;
+
+import java.awt.Canvas;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+
+import model.Model;
+
+/**
+ * This is the active rendering surface. Instead of asking Swing to
+ * repaint and waiting for it, the game loop calls render, which draws
+ * the frame into a back buffer and shows it straight away. Nothing is
+ * coalesced or dropped, and the time a frame takes can be measured.
+ * 
+ * The back buffers come from a BufferStrategy, which keeps them in video
+ * memory (as VolatileImages) where the platform allows. Their contents can
+ * be lost at any time, for example when the window is minimized, in which
+ * case the frame is simply drawn again.
+ * @author Nick Cheng
+ */
+@SuppressWarnings("serial")
+public class GameCanvas extends Canvas {
+    /** number of buffers, including the one on screen */
+    private static final int BUFFERS = 2;
+    /** weight of the newest frame in the smoothed frame time */
+    private static final double SMOOTHING = 0.1;
+    
+    private SceneRenderer renderer;
+    private BufferStrategy strategy;
+    
+    private volatile long frameNanos;
+    private volatile long renderNanos;
+    private volatile double averageFrameNanos;
+    private volatile long frameCount;
+    private long lastShow;
+    
+    public GameCanvas(Model model, int width, int height) {
+        renderer = new SceneRenderer(model, width, height);
+        setPreferredSize(new Dimension(width, height));
+        //all drawing happens in render, never in paint
+        setIgnoreRepaint(true);
+        //leave keyboard focus with the content pane, which has the key listener
+        setFocusable(false);
+    }
+    
+    /**
+     * Draws and shows one frame. Call this from the game loop, after the
+     * canvas has been made visible. Does nothing before then.
+     * @param alpha Fraction of the way between the last two ticks, for
+     *      use with Constants.INTERPOLATE
+     */
+    public void render(double alpha) {
+        if (strategy == null) {
+            if (!isDisplayable()) return;
+            createBufferStrategy(BUFFERS);
+            strategy = getBufferStrategy();
+        }
+        long start = System.nanoTime();
+        renderer.setAlpha(alpha);
+        
+        do {
+            do {
+                Graphics2D g2d = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    renderer.render(g2d);
+                } finally {
+                    g2d.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        //some platforms buffer drawing commands, send them now
+        Toolkit.getDefaultToolkit().sync();
+        
+        long now = System.nanoTime();
+        renderNanos = now - start;
+        if (lastShow != 0) {
+            frameNanos = now - lastShow;
+            averageFrameNanos = averageFrameNanos == 0 ? frameNanos
+                    : averageFrameNanos + (frameNanos - averageFrameNanos) * SMOOTHING;
+        }
+        lastShow = now;
+        frameCount++;
+    }
+    
+    /**
+     * @return The renderer, for its dirty rectangle settings and counters
+     */
+    public SceneRenderer getRenderer() {
+        return renderer;
+    }
+    
+    /**
+     * @return Time between the last two frames shown, in nanoseconds
+     */
+    public long getFrameNanos() {
+        return frameNanos;
+    }
+    
+    /**
+     * @return Time between frames, smoothed over the last several frames, in nanoseconds
+     */
+    public double getAverageFrameNanos() {
+        return averageFrameNanos;
+    }
+    
+    /**
+     * @return Time the last frame took to draw and show, in nanoseconds
+     */
+    public long getRenderNanos() {
+        return renderNanos;
+    }
+    
+    /** @return Number of frames shown so far */
+    public long getFrameCount() {
+        return frameCount;
+    }
+}
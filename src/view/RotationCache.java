@@ -0,0 +1,306 @@
+package view;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import model.animation.ImageLoader;
+import model.animation.SpriteFrame;
+
+/**
+ * Keeps rotated and scaled copies of animation frames, so that a clip
+ * that is spinning or scaled can be drawn with a plain copy instead of
+ * a filtered transformed draw every frame.
+ *
+ * Rotations are rounded to one of a fixed number of angles (buckets),
+ * so a clip that turns a little every frame keeps hitting the same few
+ * copies. Scale and origin are used exactly. The copies are kept in least
+ * recently used order, and the oldest are dropped once they take up
+ * more than the memory limit.
+ *
+ * The copies only refer weakly to the frames they were drawn from, so
+ * they do not keep frames (and the atlas sheets under them) alive after
+ * the AnimationCache lets go of them. Copies of frames that have been
+ * collected are dropped on the next lookup.
+ *
+ * Clips that need their exact angle can opt out with
+ * MovieClip.exactRotation.
+ * @author Nick Cheng
+ */
+public class RotationCache {
+    private static final double TWO_PI = Math.PI * 2;
+
+    private final int buckets;
+    private final long maxBytes;
+    private long bytes;
+
+    private final LinkedHashMap<Key, Rotated> cache;
+    /** reused for lookups so that hits create no garbage */
+    private final Key probe = new Key();
+    /** keys whose frames have been collected */
+    private final ReferenceQueue<SpriteFrame> collected = new ReferenceQueue<SpriteFrame>();
+    private final double[] corners = new double[8];
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * A frame drawn at some angle and scale, and where its top left
+     * corner goes relative to the clip's position
+     */
+    public static class Rotated {
+        public final SpriteFrame frame;
+        public final int offsetX;
+        public final int offsetY;
+
+        Rotated(SpriteFrame frame, int offsetX, int offsetY) {
+            this.frame = frame;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+        }
+    }
+
+    /**
+     * Keys in the cache hold their frame weakly. The lookup probe holds
+     * its frame in the frame field instead.
+     */
+    private static class Key extends WeakReference<SpriteFrame> {
+        SpriteFrame frame;
+        int bucket;
+        double scaleX;
+        double scaleY;
+        int shiftX;
+        int shiftY;
+        int hash;
+
+        Key() {
+            super(null);
+        }
+
+        Key(Key k, ReferenceQueue<SpriteFrame> queue) {
+            super(k.frame, queue);
+            bucket = k.bucket;
+            scaleX = k.scaleX;
+            scaleY = k.scaleY;
+            shiftX = k.shiftX;
+            shiftY = k.shiftY;
+            hash = k.hash;
+        }
+
+        SpriteFrame frame() {
+            return frame != null ? frame : get();
+        }
+
+        void rehash() {
+            int h = System.identityHashCode(frame) * 31 + bucket;
+            long s = Double.doubleToLongBits(scaleX) * 31 + Double.doubleToLongBits(scaleY);
+            h = h * 31 + (int) (s ^ (s >>> 32));
+            hash = (h * 31 + shiftX) * 31 + shiftY;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) obj;
+            SpriteFrame f = frame();
+            //a key whose frame is gone matches nothing
+            return f != null && f == k.frame() && bucket == k.bucket && scaleX == k.scaleX
+                    && scaleY == k.scaleY && shiftX == k.shiftX && shiftY == k.shiftY;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * @param buckets Number of angles a full turn is rounded to
+     * @param maxBytes Most memory the copies may take up, counting
+     *      4 bytes a pixel
+     */
+    public RotationCache(int buckets, long maxBytes) {
+        if (buckets < 1) {
+            throw new IllegalArgumentException("buckets must be at least 1");
+        }
+        this.buckets = buckets;
+        this.maxBytes = maxBytes;
+        cache = new LinkedHashMap<Key, Rotated>(64, 0.75f, true);
+    }
+
+    /**
+     * Gets a frame drawn rotated then scaled, the same way the view places
+     * transformed clips: scaled about the clip's position and rotated about
+     * its origin (see MovieClip.setOrigin).
+     * @param frame The animation frame
+     * @param rotation Rotation in radians, rounded to the nearest bucket
+     * @param scaleX Horizontal scale
+     * @param scaleY Vertical scale
+     * @param shiftX The clip's shiftX
+     * @param shiftY The clip's shiftY
+     * @return The copy, or null if it would be too big to keep
+     */
+    public Rotated get(SpriteFrame frame, double rotation, double scaleX, double scaleY,
+            int shiftX, int shiftY) {
+        purge();
+        Key k = probe;
+        k.frame = frame;
+        k.bucket = bucketOf(rotation);
+        k.scaleX = scaleX;
+        k.scaleY = scaleY;
+        k.shiftX = shiftX;
+        k.shiftY = shiftY;
+        k.rehash();
+        Rotated r = cache.get(k);
+        if (r != null) {
+            hits++;
+        } else {
+            misses++;
+            r = render(k);
+            if (r != null) {
+                cache.put(new Key(k, collected), r);
+                bytes += sizeOf(r);
+                trim();
+            }
+        }
+        //do not keep the frame alive through the probe
+        k.frame = null;
+        return r;
+    }
+
+    private int bucketOf(double rotation) {
+        int b = (int) Math.round(rotation / TWO_PI * buckets) % buckets;
+        return b < 0 ? b + buckets : b;
+    }
+
+    /**
+     * Draws the frame for a key into a new image just big enough to hold it
+     */
+    private Rotated render(Key k) {
+        double shiftX = k.shiftX * k.scaleX;
+        double shiftY = k.shiftY * k.scaleY;
+        AffineTransform at = AffineTransform.getTranslateInstance(shiftX, shiftY);
+        if (k.bucket != 0) {
+            at.rotate(k.bucket * TWO_PI / buckets, -shiftX, -shiftY);
+        }
+        at.scale(k.scaleX, k.scaleY);
+
+        SpriteFrame f = k.frame;
+        double[] c = corners;
+        c[0] = 0; c[1] = 0; c[2] = f.width; c[3] = 0;
+        c[4] = 0; c[5] = f.height; c[6] = f.width; c[7] = f.height;
+        at.transform(c, 0, c, 0, 4);
+        double minX = Math.min(Math.min(c[0], c[2]), Math.min(c[4], c[6]));
+        double minY = Math.min(Math.min(c[1], c[3]), Math.min(c[5], c[7]));
+        double maxX = Math.max(Math.max(c[0], c[2]), Math.max(c[4], c[6]));
+        double maxY = Math.max(Math.max(c[1], c[3]), Math.max(c[5], c[7]));
+        //one pixel of slack for the bilinear filtering at the edges
+        int x = (int) Math.floor(minX) - 1;
+        int y = (int) Math.floor(minY) - 1;
+        int w = (int) Math.ceil(maxX) + 1 - x;
+        int h = (int) Math.ceil(maxY) + 1 - y;
+        if ((long) w * h * 4 > maxBytes / 4) return null;
+
+        BufferedImage image = ImageLoader.createCompatibleImage(w, h, Transparency.TRANSLUCENT);
+        Graphics2D g = image.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.translate(-x, -y);
+        g.transform(at);
+        f.draw(g, 0, 0);
+        g.dispose();
+        return new Rotated(new SpriteFrame(image), x, y);
+    }
+
+    /**
+     * Drops the copies of frames that have been collected
+     */
+    private void purge() {
+        Reference<? extends SpriteFrame> ref;
+        while ((ref = collected.poll()) != null) {
+            Rotated r = cache.remove(ref);
+            if (r != null) bytes -= sizeOf(r);
+        }
+    }
+
+    /**
+     * Drops the least recently used copies until the cache fits its limit
+     */
+    private void trim() {
+        Iterator<Map.Entry<Key, Rotated>> it = cache.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Rotated r = it.next().getValue();
+            it.remove();
+            bytes -= sizeOf(r);
+            evictions++;
+        }
+    }
+
+    private static long sizeOf(Rotated r) {
+        return (long) r.frame.width * r.frame.height * 4;
+    }
+
+    /**
+     * Drops every copy
+     */
+    public void clear() {
+        cache.clear();
+        bytes = 0;
+    }
+
+    /** @return Number of copies kept */
+    public int size() {
+        return cache.size();
+    }
+
+    /** @return Memory taken by the copies, counting 4 bytes a pixel */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return Fraction of lookups that found a copy, 0 if there were none
+     */
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public void resetStats() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+}
@@ -0,0 +1,564 @@
+package view;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import model.Constants;
+import model.Model;
+import model.MovieClip;
+import model.SpriteBatch;
+import model.animation.SpriteFrame;
+import utils.Utils;
+
+/**
+ * This draws the model. Both of the game surfaces, GameArea (painted by
+ * Swing) and GameCanvas (drawn by the game loop), hand their graphics to
+ * a scene renderer, so the game looks the same whichever one is used.
+ * 
+ * The scene is kept in a back buffer between frames. Each frame, every
+ * movie clip's placement and current animation frame are compared with
+ * how it was drawn last time, and only the screen areas that changed
+ * (dirty rectangles) are drawn again before the buffer is copied out. A
+ * scene where little moves costs little to draw. When clips change order
+ * (e.g. on a layer sorted by y), the fewest clips that moved past others
+ * are drawn again. Everything is drawn again when the background or level
+ * shift changes, when Constants.DIRTY_RECTANGLES is off or setFullRedraw
+ * is on.
+ * 
+ * Rotated and scaled clips are drawn from pre-rendered copies kept in a
+ * RotationCache, unless Constants.ROTATION_CACHE is off or the clip asks
+ * for its exact rotation.
+ * @author Nick Cheng
+ */
+public class SceneRenderer {
+    /** More dirty rectangles than this are merged into one */
+    private static final int MAX_DIRTY_RECTS = 8;
+    
+    private Model model;
+    private int WIDTH;
+    private int HEIGHT;
+    
+    /** fraction of the way between the last two ticks */
+    private volatile double alpha = 1.0;
+    
+    private volatile boolean fullRedraw = !Constants.DIRTY_RECTANGLES;
+    private BufferedImage back;
+    private Color lastBg;
+    private int lastShiftX;
+    private int lastShiftY;
+    
+    /** the clips drawn this frame, in order, and how they are drawn */
+    private DrawItem[] items = new DrawItem[0];
+    private int itemCount;
+    /** the clips drawn this frame, and the ones drawn the frame before */
+    private List<MovieClip> drawn = new ArrayList<MovieClip>();
+    private List<MovieClip> drawing = new ArrayList<MovieClip>();
+    private int stamp = 1;
+    /** for finding the clips that are still in last frame's order */
+    private int[] runTails = new int[0];
+    private int[] runPrev = new int[0];
+    private boolean[] inRun = new boolean[0];
+    
+    private Rectangle[] dirty = new Rectangle[MAX_DIRTY_RECTS + 1];
+    private int dirtyCount;
+    private final Rectangle screen;
+    private final double[] corners = new double[8];
+    private final RotationCache rotations =
+            new RotationCache(Constants.ROTATION_STEPS, Constants.ROTATION_CACHE_BYTES);
+    
+    private volatile long pixelsRedrawn;
+    private volatile int dirtyRects;
+    private volatile long totalPixelsRedrawn;
+    private volatile long frames;
+    
+    /**
+     * How a movie clip is drawn in the current frame
+     */
+    private static class DrawItem {
+        MovieClip mc;
+        /** null for a sprite batch, which draws its sprites itself */
+        SpriteFrame frame;
+        /** placement of the image; a plain translation if not transformed */
+        final AffineTransform at = new AffineTransform();
+        boolean transformed;
+        int x;
+        int y;
+        final Rectangle bounds = new Rectangle();
+    }
+    
+    public SceneRenderer(Model model, int width, int height) {
+        this.model = model;
+        WIDTH = width;
+        HEIGHT = height;
+        screen = new Rectangle(0, 0, width, height);
+        for (int i = 0; i < dirty.length; i++) {
+            dirty[i] = new Rectangle();
+        }
+    }
+    
+    /**
+     * This first works out which parts of the screen changed, then
+     * draws the background over them according to the background
+     * color specified in the model and goes through the displaylist
+     * layers adding the movie clips in order. The ones toward the end
+     * of the layer's list will appear in front of the the previous ones.
+     * @param g2d The graphic to draw onto
+     */
+    public void render (Graphics2D g2d) {
+        //the game loop changes the model on its own thread
+        synchronized(model){
+            boolean full = fullRedraw || back == null;
+            if (back == null) back = createBuffer();
+            if (!model.bgColor.equals(lastBg) || model.levelShiftX != lastShiftX
+                    || model.levelShiftY != lastShiftY){
+                full = true;
+                lastBg = model.bgColor;
+                lastShiftX = model.levelShiftX;
+                lastShiftY = model.levelShiftY;
+            }
+            
+            model.sortLayers();
+            itemCount = 0;
+            for (int i=0;i<model.displayList.size();i++){
+                List<MovieClip> layer = model.displayList.get(i);
+                for(MovieClip mc : layer){
+                    prepareMC(mc);
+                }
+            }
+            
+            dirtyCount = 0;
+            if (!full) findDirty();
+            remember();
+            if (!full) findRemoved();
+            
+            Graphics2D bg = back.createGraphics();
+            bg.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            long pixels = 0;
+            if (full){
+                redraw(bg, screen);
+                pixels = (long) WIDTH * HEIGHT;
+                dirtyRects = 1;
+            }else{
+                for (int i = 0; i < dirtyCount; i++){
+                    redraw(bg, dirty[i]);
+                    pixels += (long) dirty[i].width * dirty[i].height;
+                }
+                dirtyRects = dirtyCount;
+            }
+            bg.dispose();
+            pixelsRedrawn = pixels;
+            totalPixelsRedrawn += pixels;
+            frames++;
+
+        }
+        g2d.drawImage(back, 0, 0, null);
+    }
+    
+    /**
+     * Draws the background and every clip that overlaps an area
+     * of the back buffer
+     */
+    private void redraw(Graphics2D bg, Rectangle area){
+        bg.setClip(area);
+        bg.setColor(lastBg);
+        bg.fillRect(area.x, area.y, area.width, area.height);
+        for (int i = 0; i < itemCount; i++){
+            DrawItem item = items[i];
+            if (item.bounds.intersects(area)){
+                if (item.frame == null){
+                    drawBatch(bg, (SpriteBatch) item.mc, area);
+                }else if (item.transformed){
+                    AffineTransform saved = bg.getTransform();
+                    bg.transform(item.at);
+                    item.frame.draw(bg, 0, 0);
+                    bg.setTransform(saved);
+                }else{
+                    item.frame.draw(bg, item.x, item.y);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Compares the clips about to be drawn with the ones drawn last
+     * frame and collects the areas that changed.
+     */
+    private void findDirty(){
+        int last = stamp - 1;
+        int lastIndex = -1;
+        boolean reordered = false;
+        for (int i = 0; i < itemCount; i++){
+            DrawItem item = items[i];
+            MovieClip mc = item.mc;
+            if (mc.drawnStamp == last){
+                if (mc.drawnIndex < lastIndex){
+                    reordered = true;
+                }else{
+                    lastIndex = mc.drawnIndex;
+                }
+                //sprite batches are taken to change every frame
+                if (item.frame == null || mc.drawnFrame != item.frame
+                        || !mc.drawnTransform.equals(item.at)){
+                    addDirty(mc.drawnBounds);
+                    addDirty(item.bounds);
+                }
+            }else{
+                addDirty(item.bounds);
+            }
+        }
+        if (reordered) findReordered();
+    }
+    
+    /**
+     * Clips that changed places may overlap the other way round now. Of
+     * any two clips that did, the area they share is in both, so drawing
+     * one of them again (where it was and where it is) is enough. The
+     * clips left alone are the longest run still in last frame's order,
+     * so the fewest are drawn again: moving one clip to the back of a
+     * layer draws just that one.
+     */
+    private void findReordered(){
+        int last = stamp - 1;
+        if (runTails.length < itemCount){
+            runTails = new int[itemCount];
+            runPrev = new int[itemCount];
+            inRun = new boolean[itemCount];
+        }
+        //longest increasing run of last frame's indices, by patience sorting
+        int length = 0;
+        for (int i = 0; i < itemCount; i++){
+            MovieClip mc = items[i].mc;
+            inRun[i] = false;
+            if (mc.drawnStamp != last) continue;
+            int lo = 0;
+            int hi = length;
+            while (lo < hi){
+                int mid = (lo + hi) >>> 1;
+                if (items[runTails[mid]].mc.drawnIndex < mc.drawnIndex) lo = mid + 1;
+                else hi = mid;
+            }
+            runPrev[i] = lo > 0 ? runTails[lo - 1] : -1;
+            runTails[lo] = i;
+            if (lo == length) length++;
+        }
+        for (int i = length > 0 ? runTails[length - 1] : -1; i != -1; i = runPrev[i]){
+            inRun[i] = true;
+        }
+        for (int i = 0; i < itemCount; i++){
+            MovieClip mc = items[i].mc;
+            if (mc.drawnStamp == last && !inRun[i]){
+                addDirty(mc.drawnBounds);
+                addDirty(items[i].bounds);
+            }
+        }
+    }
+    
+    /**
+     * Clips that were drawn last frame but not this one leave a hole.
+     * Called after remember, so they are the ones it did not stamp.
+     */
+    private void findRemoved(){
+        int current = stamp - 1;
+        for (MovieClip mc : drawing){
+            if (mc.drawnStamp != current) addDirty(mc.drawnBounds);
+        }
+    }
+    
+    /**
+     * Records how each clip is drawn this frame, to compare against next frame
+     */
+    private void remember(){
+        stamp++;
+        drawing.clear();
+        for (int i = 0; i < itemCount; i++){
+            DrawItem item = items[i];
+            MovieClip mc = item.mc;
+            mc.drawnStamp = stamp - 1;
+            mc.drawnIndex = i;
+            mc.drawnFrame = item.frame;
+            mc.drawnTransform.setTransform(item.at);
+            mc.drawnBounds.setBounds(item.bounds);
+            drawing.add(mc);
+        }
+        List<MovieClip> t = drawn;
+        drawn = drawing;
+        drawing = t;
+    }
+    
+    /**
+     * Adds an area to the dirty rectangles, merging it with any that
+     * it overlaps
+     */
+    private void addDirty(Rectangle r){
+        Rectangle next = dirty[dirtyCount];
+        next.setBounds(r);
+        Rectangle2D.intersect(next, screen, next);
+        if (next.isEmpty()) return;
+        dirtyCount++;
+        
+        //keep the new rectangle last and grow it over any it overlaps
+        int last = dirtyCount - 1;
+        Rectangle a = dirty[last];
+        for (int i = 0; i < last; ){
+            if (dirty[i].intersects(a)){
+                a.add(dirty[i]);
+                Rectangle gone = dirty[i];
+                dirty[i] = dirty[last - 1];
+                dirty[last - 1] = a;
+                dirty[last] = gone;
+                last--;
+                dirtyCount--;
+                i = 0;
+            }else{
+                i++;
+            }
+        }
+        if (dirtyCount > MAX_DIRTY_RECTS){
+            for (int i = 1; i < dirtyCount; i++){
+                dirty[0].add(dirty[i]);
+            }
+            dirtyCount = 1;
+        }
+    }
+    
+    private BufferedImage createBuffer(){
+        if (GraphicsEnvironment.isHeadless()){
+            return new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().createCompatibleImage(WIDTH, HEIGHT);
+    }
+    
+    /**
+     * Sets how far between the last two ticks the next frame is,
+     * for use with Constants.INTERPOLATE
+     * @param alpha From 0 (last tick) to 1 (current tick)
+     */
+    public void setAlpha(double alpha){
+        this.alpha = alpha;
+    }
+    
+    /**
+     * Turns dirty rectangles off (or back on), so that every frame
+     * is drawn from scratch
+     * @param full Whether to draw everything every frame
+     */
+    public void setFullRedraw(boolean full){
+        fullRedraw = full;
+    }
+    
+    public boolean isFullRedraw(){
+        return fullRedraw;
+    }
+    
+    /** @return Number of pixels drawn again in the last frame */
+    public long getPixelsRedrawn(){
+        return pixelsRedrawn;
+    }
+    
+    /** @return Number of areas drawn again in the last frame */
+    public int getDirtyRectCount(){
+        return dirtyRects;
+    }
+    
+    /** @return Pixels drawn again per frame, on average since the start */
+    public double getAveragePixelsRedrawn(){
+        return frames == 0 ? 0 : (double) totalPixelsRedrawn / frames;
+    }
+    
+    /** @return The pre-rendered copies of rotated and scaled frames */
+    public RotationCache getRotationCache(){
+        return rotations;
+    }
+    
+    public int getWidth(){
+        return WIDTH;
+    }
+    
+    public int getHeight(){
+        return HEIGHT;
+    }
+    
+    /**
+     * Where to draw a movie clip. With interpolation on, this is
+     * part of the way from its position at the last tick.
+     */
+    private double drawX(MovieClip mc){
+        if (!Constants.INTERPOLATE || !mc.hasPrev) return mc.x;
+        return mc.prevX + (mc.x - mc.prevX) * alpha;
+    }
+    
+    private double drawY(MovieClip mc){
+        if (!Constants.INTERPOLATE || !mc.hasPrev) return mc.y;
+        return mc.prevY + (mc.y - mc.prevY) * alpha;
+    }
+
+    /**
+     * This will work out how to draw a movie clip. It takes into
+     * account object position, origin setting, scale, and rotation.
+     * It makes use of AffineTransform to do the non-exact pixel
+     * calculations, but only if the movie clip needs a transform
+     * (i.e. it is scaled or rotated). Off screen clips are skipped.
+     * Animations are moved on by the tick, not here.
+     * @param mc The movie clip to draw
+     */
+    private void prepareMC (MovieClip mc){
+        if (mc instanceof SpriteBatch){
+            prepareBatch((SpriteBatch) mc);
+            return;
+        }
+        double x = drawX(mc);
+        double y = drawY(mc);
+        //only draw image if on screen
+        if (Utils.rect_collision(((int)x+mc.shiftX)+model.levelShiftX, ((int)y+mc.shiftY)+model.levelShiftY,
+                mc.getWidth(), mc.getHeight(), 0, 0,
+                Constants.GAME_WIDTH, Constants.GAME_HEIGHT)){
+
+            DrawItem item = nextItem();
+            item.mc = mc;
+            item.frame = mc.getCurrentSpriteFrame();
+            int w = item.frame.width;
+            int h = item.frame.height;
+            AffineTransform at = item.at;
+            
+            RotationCache.Rotated cached = null;
+            if (Constants.ROTATION_CACHE && !mc.exactRotation && mc.isTransformed()){
+                cached = rotations.get(item.frame, mc.rotation, mc.scaleX, mc.scaleY, mc.shiftX, mc.shiftY);
+            }
+            
+            if (cached != null){
+                item.frame = cached.frame;
+                item.transformed = false;
+                item.x = (int)Math.round(x)+model.levelShiftX+cached.offsetX;
+                item.y = (int)Math.round(y)+model.levelShiftY+cached.offsetY;
+                at.setToTranslation(item.x, item.y);
+                item.bounds.setBounds(item.x, item.y, cached.frame.width, cached.frame.height);
+            }else if (mc.isTransformed()){
+                double posX = x+model.levelShiftX;
+                double posY = y+model.levelShiftY;
+                double shiftX = mc.shiftX*mc.scaleX;
+                double shiftY = mc.shiftY*mc.scaleY;
+
+                //Use this code for scale then rotate
+                at.setToTranslation(posX+shiftX,posY+shiftY);
+                if (mc.rotation != 0){
+                    at.rotate(mc.rotation,-shiftX,-shiftY);
+                }
+                at.scale(mc.scaleX, mc.scaleY);
+
+                //Use this code for rotate then scale
+                /*at.setToTranslation(posX+shiftX,posY+shiftY);
+                at.scale(mc.scaleX, mc.scaleY);
+                if (mc.rotation != 0){
+                    at.rotate(mc.rotation,-shiftX,-shiftY);
+                }*/
+                
+                item.transformed = true;
+                double[] c = corners;
+                c[0] = 0; c[1] = 0; c[2] = w; c[3] = 0;
+                c[4] = 0; c[5] = h; c[6] = w; c[7] = h;
+                at.transform(c, 0, c, 0, 4);
+                double minX = Math.min(Math.min(c[0], c[2]), Math.min(c[4], c[6]));
+                double minY = Math.min(Math.min(c[1], c[3]), Math.min(c[5], c[7]));
+                double maxX = Math.max(Math.max(c[0], c[2]), Math.max(c[4], c[6]));
+                double maxY = Math.max(Math.max(c[1], c[3]), Math.max(c[5], c[7]));
+                //one pixel of slack for the bilinear filtering at the edges
+                int bx = (int) Math.floor(minX) - 1;
+                int by = (int) Math.floor(minY) - 1;
+                item.bounds.setBounds(bx, by, (int) Math.ceil(maxX) + 1 - bx, (int) Math.ceil(maxY) + 1 - by);
+            }else{
+                item.transformed = false;
+                item.x = (int)Math.round(x)+mc.shiftX+model.levelShiftX;
+                item.y = (int)Math.round(y)+mc.shiftY+model.levelShiftY;
+                at.setToTranslation(item.x, item.y);
+                item.bounds.setBounds(item.x, item.y, w, h);
+            }
+        }
+    }
+    
+    private DrawItem nextItem(){
+        if (itemCount == items.length){
+            items = Arrays.copyOf(items, Math.max(16, itemCount * 2));
+            for (int i = itemCount; i < items.length; i++){
+                items[i] = new DrawItem();
+            }
+        }
+        return items[itemCount++];
+    }
+    
+    /**
+     * A sprite batch is one draw item covering all of its sprites,
+     * if any of them are on screen
+     */
+    private void prepareBatch (SpriteBatch batch){
+        if (batch.size() == 0) return;
+        int left = batch.getLeft()+model.levelShiftX;
+        int top = batch.getTop()+model.levelShiftY;
+        if (!Utils.rect_collision(left, top, batch.getWidth(), batch.getHeight(), 0, 0,
+                Constants.GAME_WIDTH, Constants.GAME_HEIGHT)){
+            return;
+        }
+        DrawItem item = nextItem();
+        item.mc = batch;
+        item.frame = null;
+        item.transformed = false;
+        item.x = 0;
+        item.y = 0;
+        item.at.setToIdentity();
+        item.bounds.setBounds(left, top, batch.getWidth(), batch.getHeight());
+    }
+    
+    /**
+     * Draws the sprites of a batch that overlap an area. Like movie
+     * clips, rotated and scaled sprites come from the rotation cache
+     * if they can.
+     */
+    private void drawBatch (Graphics2D bg, SpriteBatch batch, Rectangle area){
+        double baseX = batch.x+model.levelShiftX;
+        double baseY = batch.y+model.levelShiftY;
+        for (int i = 0; i < batch.size(); i++){
+            SpriteFrame frame = batch.getFrame(i);
+            double x = baseX+batch.spriteX[i];
+            double y = baseY+batch.spriteY[i];
+            double rotation = batch.spriteRotation[i];
+            double scale = batch.spriteScale[i];
+            int shiftX = -frame.width/2;
+            int shiftY = -frame.height/2;
+            if (rotation == 0 && scale == 1){
+                int dx = (int)Math.round(x)+shiftX;
+                int dy = (int)Math.round(y)+shiftY;
+                if (area.intersects(dx, dy, frame.width, frame.height)){
+                    frame.draw(bg, dx, dy);
+                }
+                continue;
+            }
+            //the sprite fits in a circle around its center
+            double r = Math.hypot(frame.width, frame.height)*Math.abs(scale)/2+1;
+            if (!area.intersects(x-r, y-r, 2*r, 2*r)) continue;
+            RotationCache.Rotated cached = null;
+            if (Constants.ROTATION_CACHE){
+                cached = rotations.get(frame, rotation, scale, scale, shiftX, shiftY);
+            }
+            if (cached != null){
+                cached.frame.draw(bg, (int)Math.round(x)+cached.offsetX, (int)Math.round(y)+cached.offsetY);
+            }else{
+                AffineTransform saved = bg.getTransform();
+                bg.translate(x+shiftX*scale, y+shiftY*scale);
+                bg.rotate(rotation, -shiftX*scale, -shiftY*scale);
+                bg.scale(scale, scale);
+                frame.draw(bg, 0, 0);
+                bg.setTransform(saved);
+            }
+        }
+    }
+}
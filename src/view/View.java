@@ -23,7 +23,10 @@ import controller.Controller;
 public class View {    
     private JFrame frame;
     private JPanel content;
-    private GameArea game;
+    /** the game surface, one of the two below */
+    private Component game;
+    private GameArea gameArea;
+    private GameCanvas gameCanvas;
     
     Cursor blankCursor; //for use in hiding mouse
     
@@ -45,7 +48,13 @@ public class View {
         content.addKeyListener(controller.gameKeys);
         
         //initialize game area
-        game = new GameArea(model,Constants.GAME_WIDTH,Constants.GAME_HEIGHT);
+        if (Constants.ACTIVE_RENDERING){
+            gameCanvas = new GameCanvas(model,Constants.GAME_WIDTH,Constants.GAME_HEIGHT);
+            game = gameCanvas;
+        }else{
+            gameArea = new GameArea(model,Constants.GAME_WIDTH,Constants.GAME_HEIGHT);
+            game = gameArea;
+        }
         game.addMouseListener(controller.gameMouse);
         content.add(game);
         
@@ -71,10 +80,49 @@ public class View {
      * This is the main graphical update method in the program.
      * It takes in a model which holds the state and prepares the
      * components to reflect the state of the program then calls
-     * repaint.
+     * repaint. With active rendering the frame is drawn and shown
+     * right away, on the calling thread.
      */
     public void updateGraphics (){
-        game.repaint();
+        updateGraphics(1.0);
+    }
+    
+    /**
+     * Same as updateGraphics, with movie clips drawn part of the way
+     * from their last position when Constants.INTERPOLATE is on.
+     * @param alpha Fraction of the way between the last two ticks
+     */
+    public void updateGraphics (double alpha){
+        if (gameCanvas != null){
+            gameCanvas.render(alpha);
+        }else{
+            gameArea.setAlpha(alpha);
+            gameArea.repaint();
+        }
+    }
+    
+    /**
+     * The renderer that draws the game, for switching dirty
+     * rectangles off and reading how much was drawn
+     * @return The scene renderer
+     */
+    public SceneRenderer getRenderer(){
+        if (gameCanvas != null){
+            return gameCanvas.getRenderer();
+        }
+        return gameArea.getRenderer();
+    }
+    
+    /**
+     * The time between the last two frames drawn, to measure the
+     * frame rate with
+     * @return Frame time in nanoseconds
+     */
+    public long getFrameNanos(){
+        if (gameCanvas != null){
+            return gameCanvas.getFrameNanos();
+        }
+        return gameArea.getFrameNanos();
     }
     
     /**